@@ -0,0 +1,27 @@
+package com.id.fileserver.config;
+
+import com.id.fileserver.service.AppendBatcher;
+import com.id.fileserver.service.FileChannelCache;
+import com.id.fileserver.service.PathLocks;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class AppendConfig {
+
+    @Value("${app.append.max-batch-bytes}")
+    private int maxBatchBytes;
+
+    @Value("${app.append.max-linger-micros}")
+    private long maxLingerMicros;
+
+    @Bean
+    public AppendBatcher appendBatcher(PathLocks fileLocks, FileChannelCache channelCache) {
+        return new AppendBatcher(
+                fileLocks, channelCache, maxBatchBytes, TimeUnit.MICROSECONDS.toNanos(maxLingerMicros));
+    }
+
+}
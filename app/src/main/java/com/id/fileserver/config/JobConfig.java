@@ -0,0 +1,22 @@
+package com.id.fileserver.config;
+
+import com.id.fileserver.service.JobRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class JobConfig {
+
+    @Value("${app.jobs.threads}")
+    private int threads;
+
+    @Value("${app.jobs.max-jobs}")
+    private int maxJobs;
+
+    @Bean(destroyMethod = "close")
+    public JobRegistry jobRegistry() {
+        return new JobRegistry(threads, maxJobs);
+    }
+
+}
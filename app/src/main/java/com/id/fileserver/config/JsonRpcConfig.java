@@ -1,17 +1,69 @@
 package com.id.fileserver.config;
 
-import com.googlecode.jsonrpc4j.spring.AutoJsonRpcServiceImplExporter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.id.fileserver.endpoint.BatchJsonRpcServer;
+import com.id.fileserver.endpoint.FileApi;
+import com.id.fileserver.endpoint.FileEndpoint;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.web.HttpRequestHandler;
 
 @Configuration
 public class JsonRpcConfig {
 
-    @Bean
-    public static AutoJsonRpcServiceImplExporter autoJsonRpcServiceImplExporter() {
-        AutoJsonRpcServiceImplExporter result = new AutoJsonRpcServiceImplExporter();
-        result.setErrorResolver(new JsonRpcErrorResolver());//custom error handling
-//        result.setHttpStatusCodeProvider();
-        return result;
+    @Value("${app.jsonrpc.max-batch-size}")
+    private int maxBatchSize;
+
+    @Value("${app.jsonrpc.parallel-batch}")
+    private boolean parallelBatch;
+
+    @Value("${app.jsonrpc.cbor-enabled}")
+    private boolean cborEnabled;
+
+    /**
+     * Exported the same way as by AutoJsonRpcServiceImplExporter (bean name is the url), but with own server
+     * executing batches in parallel.
+     * Requests with content type application/cbor are read and answered in CBOR (same messages, binary encoding).
+     */
+    @Bean(name = "/jsonrpc/v1/files")
+    public HttpRequestHandler fileApiHandler(ObjectMapper objectMapper, Jackson2ObjectMapperBuilder mapperBuilder,
+                                             FileEndpoint fileEndpoint) {
+        BatchJsonRpcServer jsonServer = createServer(objectMapper, fileEndpoint);
+        BatchJsonRpcServer cborServer = null;
+        if (cborEnabled) {
+            //same modules and features as the JSON mapper, indentation makes no sense in binary format
+            ObjectMapper cborMapper = mapperBuilder.factory(new CBORFactory()).indentOutput(false).build();
+            cborServer = createServer(cborMapper, fileEndpoint);
+            cborServer.setContentType(MediaType.APPLICATION_CBOR_VALUE);
+        }
+        BatchJsonRpcServer binaryServer = cborServer;
+        return (request, response) -> {
+            boolean cbor = binaryServer != null && isCbor(request.getContentType());
+            (cbor ? binaryServer : jsonServer).handleHttp(request, response);
+            response.getOutputStream().flush();
+        };
+    }
+
+    private BatchJsonRpcServer createServer(ObjectMapper mapper, FileEndpoint fileEndpoint) {
+        BatchJsonRpcServer server = new BatchJsonRpcServer(
+                mapper, fileEndpoint, FileApi.class, maxBatchSize, parallelBatch);
+        server.setErrorResolver(new JsonRpcErrorResolver());//custom error handling
+        return server;
+    }
+
+    private static boolean isCbor(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        try {
+            return MediaType.APPLICATION_CBOR.isCompatibleWith(MediaType.parseMediaType(contentType));
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
     }
 }
@@ -2,6 +2,7 @@ package com.id.fileserver.config;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.googlecode.jsonrpc4j.ErrorResolver;
+import com.id.fileserver.service.ServerBusyException;
 
 import java.lang.reflect.Method;
 import java.util.List;
@@ -10,6 +11,7 @@ class JsonRpcErrorResolver implements ErrorResolver {
 
     private static final int ACCESS_ERROR = -32099;
     private static final int PARAM_ERROR = -32098;
+    private static final int BUSY_ERROR = -32097;
 
     @Override
     public JsonError resolveError(Throwable t, Method method, List<JsonNode> arguments) {
@@ -19,6 +21,9 @@ class JsonRpcErrorResolver implements ErrorResolver {
         if (t instanceof IllegalArgumentException iae) {
             return new JsonError(PARAM_ERROR, iae.getMessage(), iae.getClass().getSimpleName());
         }
+        if (t instanceof ServerBusyException sbe) {
+            return new JsonError(BUSY_ERROR, sbe.getMessage(), sbe.getClass().getSimpleName());
+        }
         return null;
     }
 
@@ -0,0 +1,25 @@
+package com.id.fileserver.config;
+
+import com.id.fileserver.service.FileServiceLimits;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class LimitsConfig {
+
+    @Value("${app.read.max-length}")
+    private int maxReadLength;
+
+    @Value("${app.list.max-page-size}")
+    private int maxPageSize;
+
+    @Value("${app.follow.max-wait-millis}")
+    private long maxWaitMillis;
+
+    @Bean
+    public FileServiceLimits fileServiceLimits() {
+        return new FileServiceLimits(maxReadLength, maxPageSize, maxWaitMillis);
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.id.fileserver.config;
+
+import com.id.fileserver.service.FileWaiters;
+import com.id.fileserver.service.MetadataCache;
+import com.id.fileserver.service.PathIndex;
+import com.id.fileserver.service.RootDirWatcher;
+import com.id.fileserver.service.TreeIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Configuration
+public class MetadataConfig {
+
+    @Value("${app.watch.enabled}")
+    private boolean watchEnabled;
+
+    @Value("${app.metadata-cache.max-entries}")
+    private int maxEntries;
+
+    @Value("${app.tree-index.max-entries}")
+    private long treeIndexMaxEntries;
+
+    @Value("${app.path-index.enabled}")
+    private boolean pathIndexEnabled;
+
+    @Value("${app.path-index.directory}")
+    private String pathIndexDirectory;
+
+    @Value("${app.path-index.max-log-size}")
+    private long pathIndexMaxLogSize;
+
+    @Value("${app.follow.max-waiters}")
+    private int maxWaiters;
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public RootDirWatcher rootDirWatcher(Path rootDirPath) {
+        return new RootDirWatcher(rootDirPath, watchEnabled);
+    }
+
+    @Bean
+    public MetadataCache metadataCache(RootDirWatcher rootDirWatcher) {
+        //without watching, outside changes would never invalidate the cache
+        MetadataCache cache = new MetadataCache(rootDirWatcher.isEnabled() ? maxEntries : 0, rootDirWatcher::isWatched);
+        rootDirWatcher.addListener(cache);
+        return cache;
+    }
+
+    @Bean
+    public TreeIndex treeIndex(RootDirWatcher rootDirWatcher) {
+        //without watching, every summary walks the tree
+        TreeIndex index = new TreeIndex(rootDirWatcher.isEnabled() ? treeIndexMaxEntries : 0);
+        rootDirWatcher.addListener(index);
+        return index;
+    }
+
+    @Bean
+    public FileWaiters fileWaiters(RootDirWatcher rootDirWatcher) {
+        //without watching, only appends made by the service wake waiters
+        FileWaiters waiters = new FileWaiters(maxWaiters);
+        rootDirWatcher.addListener(waiters);
+        return waiters;
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public PathIndex pathIndex(Path rootDirPath, RootDirWatcher rootDirWatcher) {
+        //without watching, outside changes would never get into the index
+        Path indexDir = Paths.get(pathIndexDirectory).toAbsolutePath().normalize();
+        PathIndex index = new PathIndex(rootDirPath, indexDir, pathIndexEnabled && rootDirWatcher.isEnabled(),
+                pathIndexMaxLogSize);
+        rootDirWatcher.addListener(index);
+        return index;
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.id.fileserver.config;
+
+import com.id.fileserver.service.BlockCache;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MetricsConfig {
+
+    private static final String CACHE_TAG = "cache";
+
+    @Bean
+    public MeterBinder blockCacheMetrics(BlockCache blockCache) {
+        return registry -> {
+            FunctionCounter.builder("cache.gets", blockCache, BlockCache::hitCount)
+                    .tag(CACHE_TAG, "blocks").tag("result", "hit")
+                    .description("Block cache hits")
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", blockCache, BlockCache::missCount)
+                    .tag(CACHE_TAG, "blocks").tag("result", "miss")
+                    .description("Block cache misses")
+                    .register(registry);
+            FunctionCounter.builder("cache.evictions", blockCache, BlockCache::evictionCount)
+                    .tag(CACHE_TAG, "blocks")
+                    .description("Blocks evicted from cache")
+                    .register(registry);
+            Gauge.builder("cache.size", blockCache, BlockCache::size)
+                    .tag(CACHE_TAG, "blocks")
+                    .description("Number of cached blocks")
+                    .register(registry);
+        };
+    }
+
+}
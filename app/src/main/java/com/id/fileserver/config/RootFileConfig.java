@@ -1,14 +1,12 @@
 package com.id.fileserver.config;
 
+import com.id.fileserver.service.PathLocks;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReentrantLock;
 
 @Configuration
 public class RootFileConfig {
@@ -22,8 +20,8 @@ public class RootFileConfig {
     }
 
     @Bean
-    public ConcurrentMap<Path, ReentrantLock> fileLocks() {
-        return new ConcurrentHashMap<>();
+    public PathLocks fileLocks(Path rootDirPath) {
+        return new PathLocks(rootDirPath);
     }
 
 }
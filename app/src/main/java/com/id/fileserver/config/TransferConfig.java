@@ -0,0 +1,80 @@
+package com.id.fileserver.config;
+
+import com.id.fileserver.service.BlockCache;
+import com.id.fileserver.service.BufferPool;
+import com.id.fileserver.service.FileChannelCache;
+import com.id.fileserver.service.MappedFileCache;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class TransferConfig {
+
+    @Value("${app.transfer.buffer-size}")
+    private int bufferSize;
+
+    @Value("${app.transfer.pooled-buffers}")
+    private int pooledBuffers;
+
+    @Value("${app.read.buffer-size}")
+    private int readBufferSize;
+
+    @Value("${app.read.pooled-buffers}")
+    private int pooledReadBuffers;
+
+    @Value("${app.channel-cache.max-open}")
+    private int maxOpenChannels;
+
+    @Value("${app.channel-cache.max-idle-seconds}")
+    private long maxIdleSeconds;
+
+    @Value("${app.mmap.enabled}")
+    private boolean mmapEnabled;
+
+    @Value("${app.mmap.min-file-size}")
+    private long mmapMinFileSize;
+
+    @Value("${app.mmap.max-files}")
+    private int mmapMaxFiles;
+
+    @Value("${app.mmap.segment-size}")
+    private int mmapSegmentSize;
+
+    @Value("${app.block-cache.max-bytes}")
+    private long blockCacheMaxBytes;
+
+    @Value("${app.block-cache.block-size}")
+    private int blockCacheBlockSize;
+
+    @Bean
+    public BlockCache blockCache() {
+        return new BlockCache(blockCacheMaxBytes, blockCacheBlockSize);
+    }
+
+    @Bean
+    public MappedFileCache mappedFiles() {
+        long minFileSize = mmapEnabled ? mmapMinFileSize : Long.MAX_VALUE;
+        return new MappedFileCache(
+                minFileSize, mmapMaxFiles, TimeUnit.SECONDS.toNanos(maxIdleSeconds), mmapSegmentSize);
+    }
+
+    @Bean
+    public FileChannelCache channelCache() {
+        return new FileChannelCache(maxOpenChannels, TimeUnit.SECONDS.toNanos(maxIdleSeconds));
+    }
+
+    @Bean
+    public BufferPool transferBuffers() {
+        return new BufferPool(bufferSize, pooledBuffers, true);
+    }
+
+    @Bean
+    public BufferPool readBuffers() {
+        //heap buffers, read data is decoded to a string anyway
+        return new BufferPool(readBufferSize, pooledReadBuffers, false);
+    }
+
+}
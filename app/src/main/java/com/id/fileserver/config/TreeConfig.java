@@ -0,0 +1,57 @@
+package com.id.fileserver.config;
+
+import com.id.fileserver.service.FileCopier;
+import com.id.fileserver.service.FileGrep;
+import com.id.fileserver.service.TreeOperations;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Configuration
+public class TreeConfig {
+
+    @Value("${app.tree.parallelism}")
+    private int parallelism;
+
+    @Value("${app.copy.clone-enabled}")
+    private boolean cloneEnabled;
+
+    @Value("${app.copy.clone-min-size}")
+    private long cloneMinSize;
+
+    @Value("${app.copy.staging-directory}")
+    private String stagingDirectory;
+
+    @Value("${app.grep.buffer-size}")
+    private int grepBufferSize;
+
+    @Value("${app.grep.max-millis}")
+    private long grepMaxMillis;
+
+    @Value("${app.grep.max-concurrent}")
+    private int grepMaxConcurrent;
+
+    @Bean(initMethod = "start")
+    public FileCopier fileCopier(Path rootDirPath) {
+        Path stagingDir = Paths.get(stagingDirectory).toAbsolutePath().normalize();
+        //temporary files must not be seen by listing and searches
+        if (stagingDir.startsWith(rootDirPath)) {
+            throw new IllegalArgumentException("Staging directory is inside the root directory: " + stagingDir);
+        }
+        return new FileCopier(stagingDir, cloneEnabled ? cloneMinSize : Long.MAX_VALUE);
+    }
+
+    @Bean
+    public FileGrep fileGrep() {
+        return new FileGrep(grepBufferSize, grepMaxMillis, grepMaxConcurrent);
+    }
+
+    @Bean(destroyMethod = "close")
+    public TreeOperations treeOperations(FileCopier fileCopier) {
+        return new TreeOperations(parallelism, fileCopier);
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.id.fileserver.config;
+
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Requests are handled on virtual threads (a new one per request) instead of Tomcat's worker pool.
+ * <p>
+ * Service I/O runs on the request thread. Service locks are ReentrantLocks, so a virtual thread waiting for a file
+ * lock doesn't pin its carrier; blocking file system calls do pin it, which the virtual thread scheduler compensates
+ * by adding carriers temporarily.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfig {
+
+    @Value("${app.virtual-threads.max-connections}")
+    private int maxConnections;
+
+    @Value("${app.virtual-threads.accept-count}")
+    private int acceptCount;
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadsProtocolHandlerCustomizer() {
+        return protocolHandler -> {
+            protocolHandler.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            //every accepted connection can be served at once, worker pool no longer limits them
+            if (protocolHandler instanceof AbstractProtocol<?> protocol) {
+                protocol.setMaxConnections(maxConnections);
+                protocol.setAcceptCount(acceptCount);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.id.fileserver.endpoint;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.googlecode.jsonrpc4j.DefaultHttpStatusCodeProvider;
+import com.googlecode.jsonrpc4j.ErrorResolver.JsonError;
+import com.googlecode.jsonrpc4j.HttpStatusCodeProvider;
+import com.googlecode.jsonrpc4j.JsonResponse;
+import com.googlecode.jsonrpc4j.JsonRpcServer;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JSON-RPC server executing batch requests in parallel.
+ * <p>
+ * Every call of a batch runs on its own virtual thread as soon as the calls it depends on are done.
+ * A call depends on the earlier calls of the batch touching the same path, a parent or a child of it,
+ * unless both calls are read-only. Calls of unknown paths (e.g. positional params) wait for all earlier calls
+ * and all later calls wait for them. So the results are the same as of serial execution.
+ */
+@Slf4j
+public class BatchJsonRpcServer extends JsonRpcServer {
+
+    private static final Set<String> READ_ONLY_METHODS = Set.of(
+            "getFileInfo", "listDirectory", "listDirectoryPage", "find", "grep", "getTreeSummary",
+            "readFromFile", "readBytesFromFile", "readFollow");
+
+    private static final Map<String, List<String>> PATH_PARAMS = Map.ofEntries(
+            Map.entry("getFileInfo", List.of("path")),
+            Map.entry("listDirectory", List.of("path")),
+            Map.entry("listDirectoryPage", List.of("path")),
+            Map.entry("find", List.of("path")),
+            Map.entry("grep", List.of("path")),
+            Map.entry("getTreeSummary", List.of("path")),
+            Map.entry("readFromFile", List.of("path")),
+            Map.entry("readBytesFromFile", List.of("path")),
+            Map.entry("readFollow", List.of("path")),
+            Map.entry("createFile", List.of("path")),
+            Map.entry("createDirectory", List.of("path")),
+            Map.entry("deleteFile", List.of("path")),
+            Map.entry("deleteDirectory", List.of("path")),
+            Map.entry("deleteDirectoryAsync", List.of("path")),
+            Map.entry("appendToFile", List.of("path")),
+            Map.entry("appendBytesToFile", List.of("path")),
+            Map.entry("moveFile", List.of("sourcePath", "targetPath")),
+            Map.entry("moveDirectory", List.of("sourcePath", "targetPath")),
+            Map.entry("moveDirectoryAsync", List.of("sourcePath", "targetPath")),
+            Map.entry("copyFile", List.of("sourcePath", "targetPath")),
+            Map.entry("copyDirectory", List.of("sourcePath", "targetPath")),
+            Map.entry("copyDirectoryAsync", List.of("sourcePath", "targetPath")));
+
+    private final ObjectMapper mapper;
+    private String contentType = JSONRPC_CONTENT_TYPE;
+    private final int maxBatchSize;
+    private final boolean parallel;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * @param maxBatchSize max number of calls in a batch, larger batches are rejected
+     * @param parallel     false to execute batches serially
+     */
+    public BatchJsonRpcServer(ObjectMapper mapper, Object handler, Class<?> remoteInterface,
+                              int maxBatchSize, boolean parallel) {
+        super(mapper, handler, remoteInterface);
+        this.mapper = mapper;
+        this.maxBatchSize = maxBatchSize;
+        this.parallel = parallel;
+    }
+
+    /**
+     * Serve a POST request like {@link JsonRpcServer}'s servlet handle does. That one can't be called
+     * without the portlet API on the class path, its overload takes portlet requests.
+     */
+    public void handleHttp(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!"POST".equals(request.getMethod())) {
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+            return;
+        }
+        response.setContentType(contentType);
+        //buffered to set the status and length of the response
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int code = JsonError.PARSE_ERROR.code;
+        try {
+            code = handleRequest(request.getInputStream(), output);
+        } catch (IOException e) {
+            //empty or unreadable request, answered as a parse error
+            log.debug("Bad request: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            log.error(e.getMessage(), e);
+        }
+        HttpStatusCodeProvider statusCodes = httpStatusCodeProvider != null
+                ? httpStatusCodeProvider : DefaultHttpStatusCodeProvider.INSTANCE;
+        response.setStatus(statusCodes.getHttpStatusCode(code));
+        response.setContentLength(output.size());
+        output.writeTo(response.getOutputStream());
+    }
+
+    @Override
+    public void setContentType(String contentType) {
+        super.setContentType(contentType);
+        this.contentType = contentType;
+    }
+
+    @Override
+    protected JsonResponse handleJsonNodeRequest(JsonNode node) throws JsonParseException, JsonMappingException {
+        if (!node.isArray()) {
+            return super.handleJsonNodeRequest(node);
+        }
+        if (node.size() > maxBatchSize) {
+            return errorResponse(null, JsonError.INVALID_REQUEST.code, "Batch too large");
+        }
+        if (!parallel || node.size() <= 1) {
+            return super.handleJsonNodeRequest(node);
+        }
+        return handleInParallel((ArrayNode) node);
+    }
+
+    private JsonResponse handleInParallel(ArrayNode batch) {
+        List<Call> calls = new ArrayList<>(batch.size());
+        for (JsonNode request : batch) {
+            Call call = new Call(request);
+            List<CompletableFuture<JsonResponse>> dependencies = new ArrayList<>();
+            for (Call previous : calls) {
+                if (call.dependsOn(previous)) {
+                    dependencies.add(previous.response);
+                }
+            }
+            call.response = CompletableFuture.allOf(dependencies.toArray(CompletableFuture[]::new))
+                    .thenApplyAsync(ignored -> handleCall(request), executor);
+            calls.add(call);
+        }
+
+        ArrayNode responses = mapper.createArrayNode();
+        JsonResponse result = new JsonResponse();
+        int errors = 0;
+        for (Call call : calls) {
+            JsonResponse response = call.response.join();
+            if (result.getExceptionToRethrow() == null) {
+                result.setExceptionToRethrow(response.getExceptionToRethrow());
+            }
+            responses.add(response.getResponse());
+            if (response.getCode() != JsonError.OK.code) {
+                errors++;
+            }
+        }
+        log.debug("Served {} requests in parallel, errors: {}", calls.size(), errors);
+        result.setResponse(responses);
+        result.setCode(errors > 0 ? JsonError.BULK_ERROR.code : JsonError.OK.code);
+        return result;
+    }
+
+    private JsonResponse handleCall(JsonNode request) {
+        try {
+            return super.handleJsonNodeRequest(request);
+        } catch (Exception e) {
+            //errors of the invoked method are resolved by the server, this one is not caused by the request
+            log.error("Failed to handle call of a batch: {}", request.get("method"), e);
+            return errorResponse(request.get("id"), JsonError.INTERNAL_ERROR.code, JsonError.INTERNAL_ERROR.message);
+        }
+    }
+
+    /**
+     * @param id id of the call, null if it is not known
+     */
+    private JsonResponse errorResponse(JsonNode id, int code, String message) {
+        ObjectNode error = mapper.createObjectNode();
+        error.put("code", code);
+        error.put("message", message);
+        ObjectNode response = mapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        if (id != null) {
+            response.set("id", id);
+        }
+        else {
+            response.putNull("id");
+        }
+        response.set("error", error);
+        return new JsonResponse(response, code);
+    }
+
+    /**
+     * Call of a batch with the paths it touches
+     */
+    private static class Call {
+        private final boolean readOnly;
+        /**
+         * Normalized paths, null if they are unknown
+         */
+        private final List<Path> paths;
+        private CompletableFuture<JsonResponse> response;
+
+        private Call(JsonNode request) {
+            String method = request.path("method").asText();
+            this.readOnly = READ_ONLY_METHODS.contains(method);
+            this.paths = paths(request, PATH_PARAMS.get(method));
+        }
+
+        private boolean dependsOn(Call previous) {
+            if (paths == null || previous.paths == null) {
+                return true;
+            }
+            if (readOnly && previous.readOnly) {
+                return false;
+            }
+            for (Path path : paths) {
+                for (Path previousPath : previous.paths) {
+                    if (overlap(path, previousPath)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private static List<Path> paths(JsonNode request, List<String> paramNames) {
+            JsonNode params = request.path("params");
+            if (paramNames == null || !params.isObject()) {
+                return null;
+            }
+            List<Path> result = new ArrayList<>(paramNames.size());
+            for (String name : paramNames) {
+                JsonNode value = params.get(name);
+                if (value == null || !value.isTextual()) {
+                    return null;
+                }
+                try {
+                    result.add(Paths.get(value.asText()).normalize());
+                } catch (InvalidPathException e) {
+                    return null;
+                }
+            }
+            return result;
+        }
+
+        private static boolean overlap(Path path1, Path path2) {
+            //empty path is the root directory
+            return path1.toString().isEmpty() || path2.toString().isEmpty()
+                    || path1.startsWith(path2) || path2.startsWith(path1);
+        }
+    }
+
+}
@@ -3,7 +3,11 @@ package com.id.fileserver.endpoint;
 
 import com.googlecode.jsonrpc4j.JsonRpcParam;
 import com.googlecode.jsonrpc4j.JsonRpcService;
+import com.id.fileserver.model.DirectoryPage;
 import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.GrepResult;
+import com.id.fileserver.model.JobInfo;
+import com.id.fileserver.model.TreeSummary;
 import org.springframework.stereotype.Controller;
 
 import java.util.List;
@@ -30,6 +34,65 @@ public interface FileApi {
      */
     List<FileInfo> listDirectory(@JsonRpcParam(value = "path") String path);
 
+    /**
+     * Get one page of children in directory. Only direct children are returned.
+     * Entries are in directory order; for whole directory call it repeatedly with the cursor of the previous page
+     *
+     * @param path   relative path
+     * @param limit  max number of entries, limited by app.list.max-page-size
+     * @param cursor cursor from the previous page, null (or empty) for the first page
+     * @return page of children and cursor of the next page (missing on the last page)
+     * @throws RuntimeException if it doesn't exist or cursor is invalid
+     */
+    DirectoryPage listDirectoryPage(
+            @JsonRpcParam(value = "path") String path,
+            @JsonRpcParam(value = "limit") int limit,
+            @JsonRpcParam(value = "cursor") String cursor);
+
+    /**
+     * Find files and directories in a directory tree. Subdirectories are searched in parallel, so entries
+     * come in no particular order; search stops when the limit is reached
+     *
+     * @param path     relative path of directory
+     * @param glob     glob of names (e.g. {@code *.log}), or of paths relative to the directory if it has '/'
+     *                 (e.g. {@code logs/*.log})
+     * @param maxDepth max depth below the directory (1 for its children only), 0 for no limit
+     * @param limit    max number of entries, limited by app.list.max-page-size
+     * @return found entries
+     * @throws RuntimeException if directory doesn't exist or params are invalid
+     */
+    List<FileInfo> find(
+            @JsonRpcParam(value = "path") String path,
+            @JsonRpcParam(value = "glob") String glob,
+            @JsonRpcParam(value = "maxDepth") int maxDepth,
+            @JsonRpcParam(value = "limit") int limit);
+
+    /**
+     * Search lines of a file, or of all files in a directory tree, matching a regular expression (plain text
+     * is matched faster). Files are searched in parallel: matches of a file come in order, files in no particular
+     * order. Search stops when max matches are found or it runs out of time (app.grep.max-millis)
+     *
+     * @param path       relative path of file or directory
+     * @param pattern    regular expression
+     * @param maxMatches max number of matches, limited by app.list.max-page-size
+     * @return matching lines with their offsets, and whether all matches were found
+     * @throws RuntimeException if path doesn't exist, params are invalid or too many searches are running
+     */
+    GrepResult grep(
+            @JsonRpcParam(value = "path") String path,
+            @JsonRpcParam(value = "pattern") String pattern,
+            @JsonRpcParam(value = "maxMatches") int maxMatches);
+
+    /**
+     * Get totals of a directory tree: size of all files, number of files and directories and the newest
+     * modification time. Totals are kept in an index after the first call, so later calls don't walk the tree
+     *
+     * @param path relative path
+     * @return tree summary
+     * @throws RuntimeException if it doesn't exist or is not a directory
+     */
+    TreeSummary getTreeSummary(@JsonRpcParam(value = "path") String path);
+
     /**
      * Create empty file
      *
@@ -112,6 +175,57 @@ public interface FileApi {
             @JsonRpcParam(value = "sourcePath") String sourcePath,
             @JsonRpcParam(value = "targetPath") String targetPath);
 
+    /**
+     * Start deleting directory in background, see {@link #deleteDirectory(String)}
+     *
+     * @param path relative path
+     * @return job id
+     * @throws RuntimeException if there are too many unfinished jobs
+     */
+    String deleteDirectoryAsync(@JsonRpcParam(value = "path") String path);
+
+    /**
+     * Start moving directory in background, see {@link #moveDirectory(String, String)}
+     *
+     * @param sourcePath relative source path
+     * @param targetPath relative target path
+     * @return job id
+     * @throws RuntimeException if there are too many unfinished jobs
+     */
+    String moveDirectoryAsync(
+            @JsonRpcParam(value = "sourcePath") String sourcePath,
+            @JsonRpcParam(value = "targetPath") String targetPath);
+
+    /**
+     * Start copying directory in background, see {@link #copyDirectory(String, String)}
+     *
+     * @param sourcePath relative source path
+     * @param targetPath relative target path
+     * @return job id
+     * @throws RuntimeException if there are too many unfinished jobs
+     */
+    String copyDirectoryAsync(
+            @JsonRpcParam(value = "sourcePath") String sourcePath,
+            @JsonRpcParam(value = "targetPath") String targetPath);
+
+    /**
+     * Get state of a background job: progress, result or error
+     *
+     * @param jobId job id
+     * @return job info
+     * @throws RuntimeException if job is unknown or was already dropped
+     */
+    JobInfo getJob(@JsonRpcParam(value = "jobId") String jobId);
+
+    /**
+     * Cancel a background job. Queued job is cancelled immediately, running job stops as soon as possible
+     *
+     * @param jobId job id
+     * @return job info
+     * @throws RuntimeException if job is unknown or was already dropped
+     */
+    JobInfo cancelJob(@JsonRpcParam(value = "jobId") String jobId);
+
     /**
      * Append data to a file
      *
@@ -128,7 +242,7 @@ public interface FileApi {
      *
      * @param path   relative path
      * @param offset offset in file in bytes
-     * @param length length in bytes
+     * @param length length in bytes, limited by app.read.max-length
      * @return data
      * @throws RuntimeException if file doesn't exist or error occurred
      */
@@ -136,4 +250,46 @@ public interface FileApi {
             @JsonRpcParam(value = "path") String path,
             @JsonRpcParam(value = "offset") int offset,
             @JsonRpcParam(value = "length") int length);
-}
\ No newline at end of file
+
+    /**
+     * Append binary data to a file. Bytes are written as they are, without charset conversion
+     *
+     * @param path relative path
+     * @param data data to be added, base64 encoded in JSON
+     * @throws RuntimeException if file doesn't exist or error occurred
+     */
+    void appendBytesToFile(
+            @JsonRpcParam(value = "path") String path,
+            @JsonRpcParam(value = "data") byte[] data);
+
+    /**
+     * Read binary data from a file. Any byte range can be read, also one splitting a multibyte character
+     *
+     * @param path   relative path
+     * @param offset offset in file in bytes
+     * @param length length in bytes, limited by app.read.max-length
+     * @return data, base64 encoded in JSON
+     * @throws RuntimeException if file doesn't exist or error occurred
+     */
+    byte[] readBytesFromFile(
+            @JsonRpcParam(value = "path") String path,
+            @JsonRpcParam(value = "offset") int offset,
+            @JsonRpcParam(value = "length") int length);
+
+    /**
+     * Read binary data appended to a growing file. If the file has no bytes past the offset yet, the request waits
+     * until they are appended (woken by the append, no polling) or the timeout expires
+     *
+     * @param path      relative path
+     * @param offset    offset in file in bytes, usually the previous offset plus the length of data read
+     * @param maxBytes  max length in bytes, limited by app.read.max-length
+     * @param timeoutMs max wait in milliseconds, limited by app.follow.max-wait-millis
+     * @return data, base64 encoded in JSON; empty if nothing was appended within the timeout
+     * @throws RuntimeException if file doesn't exist, params are invalid or too many requests are waiting
+     */
+    byte[] readFollow(
+            @JsonRpcParam(value = "path") String path,
+            @JsonRpcParam(value = "offset") int offset,
+            @JsonRpcParam(value = "maxBytes") int maxBytes,
+            @JsonRpcParam(value = "timeoutMs") long timeoutMs);
+}
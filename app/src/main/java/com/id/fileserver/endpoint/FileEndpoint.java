@@ -1,9 +1,13 @@
 
 package com.id.fileserver.endpoint;
 
-import com.googlecode.jsonrpc4j.spring.AutoJsonRpcServiceImpl;
+import com.id.fileserver.model.DirectoryPage;
 import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.GrepResult;
+import com.id.fileserver.model.JobInfo;
+import com.id.fileserver.model.TreeSummary;
 import com.id.fileserver.service.FileService;
+import com.id.fileserver.service.JobRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Controller;
@@ -13,11 +17,11 @@ import java.util.List;
 
 @Slf4j
 @Controller
-@AutoJsonRpcServiceImpl
 @RequiredArgsConstructor
 public class FileEndpoint implements FileApi {
 
     private final FileService fileService;
+    private final JobRegistry jobRegistry;
 
     public FileInfo getFileInfo(String path) {
         log.info("getFileInfo: {}", path);
@@ -39,6 +43,46 @@ public class FileEndpoint implements FileApi {
         }
     }
 
+    public DirectoryPage listDirectoryPage(String path, int limit, String cursor) {
+        log.info("listDirectoryPage: {}, limit: {}", path, limit);
+        try {
+            return fileService.listDirectory(path, limit, cursor);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public List<FileInfo> find(String path, String glob, int maxDepth, int limit) {
+        log.info("find: {}, glob: {}, maxDepth: {}, limit: {}", path, glob, maxDepth, limit);
+        try {
+            return fileService.find(path, glob, maxDepth, limit);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public GrepResult grep(String path, String pattern, int maxMatches) {
+        log.info("grep: {}, pattern: {}, maxMatches: {}", path, pattern, maxMatches);
+        try {
+            return fileService.grep(path, pattern, maxMatches);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public TreeSummary getTreeSummary(String path) {
+        log.info("getTreeSummary: {}", path);
+        try {
+            return fileService.getTreeSummary(path);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public FileInfo createFile(String path) {
         log.info("createFile: {}", path);
         try {
@@ -119,6 +163,41 @@ public class FileEndpoint implements FileApi {
         }
     }
 
+    public String deleteDirectoryAsync(String path) {
+        log.info("deleteDirectoryAsync: {}", path);
+        //invalid request fails now, not as a failed job
+        fileService.validatePath(path);
+        return jobRegistry.submit("deleteDirectory", progress -> {
+            fileService.deleteDirectory(path, progress);
+            return null;
+        });
+    }
+
+    public String moveDirectoryAsync(String sourcePath, String targetPath) {
+        log.info("moveDirectoryAsync, source: {}, target : {}", sourcePath, targetPath);
+        fileService.validatePath(sourcePath);
+        fileService.validatePath(targetPath);
+        return jobRegistry.submit("moveDirectory", progress -> fileService.moveDirectory(sourcePath, targetPath));
+    }
+
+    public String copyDirectoryAsync(String sourcePath, String targetPath) {
+        log.info("copyDirectoryAsync, source: {}, target : {}", sourcePath, targetPath);
+        fileService.validatePath(sourcePath);
+        fileService.validatePath(targetPath);
+        return jobRegistry.submit(
+                "copyDirectory", progress -> fileService.copyDirectory(sourcePath, targetPath, progress));
+    }
+
+    public JobInfo getJob(String jobId) {
+        log.info("getJob: {}", jobId);
+        return jobRegistry.get(jobId);
+    }
+
+    public JobInfo cancelJob(String jobId) {
+        log.info("cancelJob: {}", jobId);
+        return jobRegistry.cancel(jobId);
+    }
+
     public void appendToFile(String path, String data) {
         log.info("appendToFile: {}, data: {} ", path, data.length());
         try {
@@ -138,4 +217,34 @@ public class FileEndpoint implements FileApi {
             throw new RuntimeException(e);
         }
     }
-}
\ No newline at end of file
+
+    public void appendBytesToFile(String path, byte[] data) {
+        log.info("appendBytesToFile: {}, data: {} ", path, data == null ? null : data.length);
+        try {
+            fileService.appendBytesToFile(path, data);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] readBytesFromFile(String path, int offset, int length) {
+        log.info("readBytesFromFile: {}, offset: {}, length: {}", path, offset, length);
+        try {
+            return fileService.readBytesFromFile(path, offset, length);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public byte[] readFollow(String path, int offset, int maxBytes, long timeoutMs) {
+        log.info("readFollow: {}, offset: {}, maxBytes: {}, timeoutMs: {}", path, offset, maxBytes, timeoutMs);
+        try {
+            return fileService.readFollow(path, offset, maxBytes, timeoutMs);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.id.fileserver.endpoint;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.GrepMatch;
+import com.id.fileserver.service.FileService;
+import com.id.fileserver.service.FileTypeException;
+import com.id.fileserver.service.ServerBusyException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.NoSuchFileException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Plain HTTP access to file content, next to the JSON-RPC API.
+ * Content is streamed, so it is not limited by the size of a JSON-RPC message.
+ */
+@Slf4j
+@RestController
+@RequiredArgsConstructor
+@RequestMapping(FileStreamEndpoint.API_PATH)
+public class FileStreamEndpoint {
+
+    static final String API_PATH = "/stream/v1/files";
+
+    private final FileService fileService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Download file content. Single byte range requests are supported ("Range: bytes=start-end")
+     *
+     * @param path  relative path
+     * @param range optional "Range" header
+     */
+    @GetMapping
+    public void download(
+            @RequestParam("path") String path,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            HttpServletResponse response) throws IOException {
+        log.info("download: {}, range: {}", path, range);
+        List<HttpRange> ranges = parseRanges(range);
+        WritableByteChannel body = Channels.newChannel(response.getOutputStream());
+
+        //headers are set from the same size which limits the content, so exactly the promised bytes are sent
+        fileService.transferFromFile(path, size -> {
+            long start = 0;
+            long end = size - 1;
+            response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+            if (ranges.size() == 1) {
+                HttpRange httpRange = ranges.getFirst();
+                if (!isSatisfiable(httpRange, size)) {
+                    response.setStatus(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    return null;
+                }
+                start = httpRange.getRangeStart(size);
+                end = httpRange.getRangeEnd(size);
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes %d-%d/%d".formatted(start, end, size));
+            }
+            else {
+                //no range or multiple ranges: full content
+                response.setStatus(HttpStatus.OK.value());
+            }
+
+            long length = end - start + 1;
+            response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+            response.setContentLengthLong(length);
+            return new FileService.Range(start, length);
+        }, body);
+    }
+
+    /**
+     * Follow a growing file (like tail -f): bytes from the offset are written as they are appended, in chunks
+     * of the chunked transfer encoding. Response ends when nothing is appended for the timeout, or the file
+     * is deleted or moved
+     *
+     * @param path      relative path
+     * @param offset    offset in file in bytes, 0 by default
+     * @param timeoutMs max wait for the next append in milliseconds, limited by app.follow.max-wait-millis
+     */
+    @GetMapping("/follow")
+    public void follow(@RequestParam("path") String path,
+                       @RequestParam(value = "offset", defaultValue = "0") long offset,
+                       @RequestParam("timeoutMs") long timeoutMs,
+                       HttpServletResponse response) throws IOException {
+        log.info("follow: {}, offset: {}, timeoutMs: {}", path, offset, timeoutMs);
+        long position = offset;
+        try {
+            while (fileService.awaitAppend(path, position, timeoutMs)) {
+                if (!response.isCommitted()) {
+                    response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+                }
+                position += fileService.transferFromFile(
+                        path, position, Long.MAX_VALUE, Channels.newChannel(response.getOutputStream()));
+                response.flushBuffer();
+            }
+        } catch (NoSuchFileException e) {
+            if (!response.isCommitted()) {
+                throw e;
+            }
+        }
+        log.info("follow: {}, transferred: {}", path, position - offset);
+    }
+
+    /**
+     * Append request body to a file. Body is streamed as is (raw bytes, chunked transfer encoding is supported),
+     * so its size is not limited
+     *
+     * @param path relative path
+     * @return file info after append
+     */
+    @PostMapping
+    public FileInfo upload(@RequestParam("path") String path, HttpServletRequest request) throws IOException {
+        log.info("upload: {}", path);
+        long appended = fileService.transferToFile(path, Channels.newChannel(request.getInputStream()));
+        log.info("upload: {}, appended: {}", path, appended);
+        return fileService.getFileInfo(path);
+    }
+
+    /**
+     * List children of a directory as JSON array. Entries are written as they are read from the directory,
+     * so the listing is not held in memory
+     *
+     * @param path relative path
+     */
+    @GetMapping("/list")
+    public void list(@RequestParam("path") String path, HttpServletResponse response) throws IOException {
+        log.info("list: {}", path);
+        try (Stream<FileInfo> children = fileService.streamDirectory(path)) {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+                generator.writeStartArray();
+                Iterator<FileInfo> iterator = children.iterator();
+                while (iterator.hasNext()) {
+                    generator.writeObject(iterator.next());
+                }
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    /**
+     * Find files and directories in a directory tree as JSON array, see {@link FileApi#find}.
+     * Entries are written as they are found, limit is not capped
+     *
+     * @param path     relative path of directory
+     * @param glob     glob of names, or of relative paths if it has '/'
+     * @param maxDepth max depth below the directory, 0 (default) for no limit
+     * @param limit    max number of entries, no limit by default
+     */
+    @GetMapping("/find")
+    public void find(@RequestParam("path") String path,
+                     @RequestParam("glob") String glob,
+                     @RequestParam(value = "maxDepth", defaultValue = "0") int maxDepth,
+                     @RequestParam(value = "limit", defaultValue = "" + Integer.MAX_VALUE) int limit,
+                     HttpServletResponse response) throws IOException {
+        log.info("find: {}, glob: {}, maxDepth: {}, limit: {}", path, glob, maxDepth, limit);
+        try (Stream<FileInfo> found = fileService.streamFind(path, glob, maxDepth, limit)) {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+                generator.writeStartArray();
+                Iterator<FileInfo> iterator = found.iterator();
+                while (iterator.hasNext()) {
+                    generator.writeObject(iterator.next());
+                }
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    /**
+     * Search lines of a file or a directory tree as JSON array, see {@link FileApi#grep}.
+     * Matches are written as they are found, max matches is not capped
+     *
+     * @param path       relative path of file or directory
+     * @param pattern    regular expression
+     * @param maxMatches max number of matches, no limit by default
+     */
+    @GetMapping("/grep")
+    public void grep(@RequestParam("path") String path,
+                     @RequestParam("pattern") String pattern,
+                     @RequestParam(value = "maxMatches", defaultValue = "" + Integer.MAX_VALUE) int maxMatches,
+                     HttpServletResponse response) throws IOException {
+        log.info("grep: {}, pattern: {}, maxMatches: {}", path, pattern, maxMatches);
+        try (Stream<GrepMatch> matches = fileService.streamGrep(path, pattern, maxMatches)) {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+                generator.writeStartArray();
+                Iterator<GrepMatch> iterator = matches.iterator();
+                while (iterator.hasNext()) {
+                    generator.writeObject(iterator.next());
+                }
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    @ExceptionHandler(NoSuchFileException.class)
+    ResponseEntity<String> onNoSuchFile(NoSuchFileException e) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("NoSuchFileException: " + e.getMessage());
+    }
+
+    @ExceptionHandler(SecurityException.class)
+    ResponseEntity<String> onAccessError(SecurityException e) {
+        return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    ResponseEntity<String> onParamError(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(FileTypeException.class)
+    ResponseEntity<String> onFileTypeError(FileTypeException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @ExceptionHandler(ServerBusyException.class)
+    ResponseEntity<String> onBusy(ServerBusyException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IOException.class)
+    ResponseEntity<String> onIoError(IOException e) {
+        log.error("I/O error", e);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(e.getMessage());
+    }
+
+    private boolean isSatisfiable(HttpRange range, long size) {
+        return size > 0 && range.getRangeStart(size) < size;
+    }
+
+    private List<HttpRange> parseRanges(String range) {
+        if (range == null) {
+            return List.of();
+        }
+        try {
+            return HttpRange.parseRanges(range);
+        }
+        catch (IllegalArgumentException e) {
+            //malformed header is ignored, as RFC 9110 allows
+            return List.of();
+        }
+    }
+}
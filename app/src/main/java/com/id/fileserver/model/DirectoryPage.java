@@ -0,0 +1,22 @@
+package com.id.fileserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DirectoryPage {
+
+    private List<FileInfo> entries;
+    /**
+     * Cursor of the next page, null if this is the last page
+     */
+    private String nextCursor;
+
+}
@@ -0,0 +1,31 @@
+package com.id.fileserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Line of a file matching a grep pattern
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GrepMatch {
+
+    private String path;
+    /**
+     * Offset of the line start in bytes, usable with readFromFile
+     */
+    private long offset;
+    /**
+     * Line number, from 1
+     */
+    private long lineNumber;
+    /**
+     * Line without the line end, long lines are cut
+     */
+    private String line;
+
+}
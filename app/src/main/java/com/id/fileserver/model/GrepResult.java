@@ -0,0 +1,22 @@
+package com.id.fileserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GrepResult {
+
+    private List<GrepMatch> matches;
+    /**
+     * False if the search stopped at the max number of matches or ran out of time
+     */
+    private boolean complete;
+
+}
@@ -0,0 +1,37 @@
+package com.id.fileserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class JobInfo {
+
+    public enum State {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    private String id;
+    private String operation;
+    private State state;
+    /**
+     * Progress: number of processed files, directories and bytes
+     */
+    private long files;
+    private long directories;
+    private long bytes;
+    /**
+     * Result of succeeded operation, null if operation has no result
+     */
+    private FileInfo result;
+    /**
+     * Error of failed operation: exception type and message
+     */
+    private String errorType;
+    private String error;
+
+}
@@ -0,0 +1,32 @@
+package com.id.fileserver.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Totals of a directory tree
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TreeSummary {
+
+    private String path;
+    /**
+     * Total size of all files in the tree
+     */
+    private long size;
+    private long fileCount;
+    /**
+     * Number of directories under the directory (not counting itself)
+     */
+    private long directoryCount;
+    /**
+     * Newest modification time in the tree (the directory itself included), millis since epoch
+     */
+    private long lastModified;
+
+}
@@ -0,0 +1,225 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.service.FileChannelCache.Mode;
+import com.id.fileserver.service.LeaseCache.Lease;
+import com.id.fileserver.service.PathLocks.LockMode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Group commit of appends.
+ * <p>
+ * Concurrent appends to the same file join an open batch. The caller which opened the batch (its leader) lingers
+ * to let it grow, then takes the append lock, closes the batch and writes it with one gathering write to a cached
+ * (kept-open) channel. Other callers of the batch wait for its future without taking the lock; appends coming
+ * after the batch was closed open the next one. A batch which fails halfway is cut off the file.
+ */
+@Slf4j
+public class AppendBatcher {
+
+    private static final long LINGER_STEP_NANOS = 10_000;
+
+    private final PathLocks fileLocks;
+    private final FileChannelCache channelCache;
+    private final int maxBatchBytes;
+    private final long maxLingerNanos;
+
+    private final ConcurrentMap<Path, AppendQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong appendCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+
+    public AppendBatcher(PathLocks fileLocks, FileChannelCache channelCache,
+                         int maxBatchBytes, long maxLingerNanos) {
+        this.fileLocks = fileLocks;
+        this.channelCache = channelCache;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxLingerNanos = maxLingerNanos;
+    }
+
+    /**
+     * Append data to a file. Returns when data is written.
+     *
+     * @param path    resolved path of existing file
+     * @param fileKey file key read by the caller (see {@link java.nio.file.attribute.BasicFileAttributes#fileKey()})
+     * @param data    data to be appended
+     * @return size of the file after the batch containing the data
+     * @throws IOException if batch containing the data failed
+     */
+    public long append(Path path, Object fileKey, ByteBuffer data) throws IOException {
+        AppendQueue queue = queues.computeIfAbsent(path, AppendQueue::new);
+        Joined joined = queue.join(data, fileKey);
+        appendCount.incrementAndGet();
+
+        Batch batch = joined.batch();
+        if (joined.leader()) {
+            try {
+                linger(batch);
+                try (PathLocks.Held lock = fileLocks.lock(path, LockMode.APPEND)) {
+                    queue.close(batch);
+                    queue.write(batch, lock);
+                }
+            } finally {
+                //other callers of the batch wait for it, whatever happened
+                queue.close(batch);
+                batch.written.completeExceptionally(new IOException("Batch was not written"));
+            }
+        }
+        try {
+            return batch.written.join();
+        } catch (CompletionException e) {
+            throw new IOException("Append failed: " + path, e.getCause());
+        }
+    }
+
+    /**
+     * Drop queues of files which were not appended since previous call
+     */
+    public void removeIdle() {
+        for (AppendQueue queue : queues.values()) {
+            if (!queue.usedSinceCheck && queue.isIdle()) {
+                queues.remove(queue.path, queue);
+            }
+            queue.usedSinceCheck = false;
+        }
+    }
+
+    public long appendCount() {
+        return appendCount.get();
+    }
+
+    public long batchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Wait for more appends to join the batch, before the lock is taken
+     */
+    private void linger(Batch batch) {
+        if (maxLingerNanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + maxLingerNanos;
+        while (batch.bytes < maxBatchBytes && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(LINGER_STEP_NANOS);
+        }
+    }
+
+    /**
+     * Appends written together. Data is added under the queue lock until the batch is closed
+     */
+    private static class Batch {
+        private final List<ByteBuffer> data = new ArrayList<>();
+        private final CompletableFuture<Long> written = new CompletableFuture<>();
+        private volatile long bytes;
+        private Object fileKey;
+        private boolean closed;
+    }
+
+    private record Joined(Batch batch, boolean leader) {
+    }
+
+    /**
+     * Appends of one file. Batches are written only under the append lock.
+     */
+    private class AppendQueue {
+        private final Path path;
+        private final ReentrantLock lock = new ReentrantLock();
+        private Batch open;
+
+        private volatile boolean usedSinceCheck;
+
+        private AppendQueue(Path path) {
+            this.path = path;
+        }
+
+        private Joined join(ByteBuffer data, Object fileKey) {
+            lock.lock();
+            try {
+                usedSinceCheck = true;
+                boolean leader = open == null || open.closed
+                        || open.bytes + data.remaining() > maxBatchBytes;
+                if (leader) {
+                    open = new Batch();
+                }
+                open.data.add(data);
+                //file may be replaced (deleted and created again) outside the service, the latest file key is used
+                open.fileKey = fileKey;
+                open.bytes += data.remaining();
+                return new Joined(open, leader);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void close(Batch batch) {
+            lock.lock();
+            try {
+                batch.closed = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private boolean isIdle() {
+            lock.lock();
+            try {
+                return open == null || open.closed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Write closed batch under the append lock, its future is completed whatever happens
+         */
+        private void write(Batch batch, PathLocks.Held lock) {
+            try (Lease<FileChannel> channel = channelCache.acquire(path, Mode.APPEND, batch.fileKey)) {
+                FileChannel fileChannel = channel.get();
+                ByteBuffer[] buffers = batch.data.toArray(ByteBuffer[]::new);
+                //readers see the batch only when it is written completely
+                long size = fileChannel.size();
+                lock.commit(size);
+                try {
+                    long remaining = batch.bytes;
+                    while (remaining > 0) {
+                        remaining -= fileChannel.write(buffers);
+                    }
+                } catch (IOException | RuntimeException | Error e) {
+                    //no part of a failed batch is left for the next one to be appended after
+                    truncate(fileChannel, size);
+                    throw e;
+                }
+                long end = size + batch.bytes;
+                lock.commit(end);
+                batchCount.incrementAndGet();
+                batch.written.complete(end);
+            } catch (IOException | RuntimeException | Error e) {
+                log.error("Failed to append batch to: {}", path, e);
+                channelCache.invalidate(path);
+                batch.written.completeExceptionally(e);
+            }
+        }
+
+        private void truncate(FileChannel channel, long size) {
+            try {
+                channel.truncate(size);
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to cut off failed batch at {}: {}", size, path, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,499 @@
+package com.id.fileserver.service;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Off-heap cache of file blocks.
+ * <p>
+ * Blocks of fixed size are kept in one direct memory arena, keyed by path and block index. A block belongs to
+ * a file key: block of a replaced file (other file key) is a miss. Appends don't change loaded bytes,
+ * so blocks stay valid while a file grows; a partial last block serves only the bytes it has and is loaded again
+ * when more are requested. Changes of a file other than appends must invalidate its blocks.
+ * <p>
+ * Blocks are spread over segments by hash, every segment has its own lock, slots and eviction lists.
+ * Eviction is segmented LRU (probation and protected segment) with frequency based admission (TinyLFU):
+ * a new block replaces the eviction victim only if it was requested more often recently.
+ * So a single scan through a large file doesn't push out the hot blocks.
+ * <p>
+ * Block data is copied out of the arena without holding the lock. Every slot of the arena has a generation,
+ * which is changed when the slot is reused; a copy is valid only if the generation didn't change meanwhile.
+ */
+public class BlockCache {
+
+    /**
+     * Reads file content directly (on cache miss)
+     */
+    @FunctionalInterface
+    public interface BlockLoader {
+
+        /**
+         * Read file bytes at position to the buffer
+         *
+         * @return number of bytes read, -1 at end of file
+         */
+        int read(long position, ByteBuffer target) throws IOException;
+    }
+
+    private static final int PROTECTED_PERCENT = 80;
+    private static final int MAX_SEGMENTS = 16;
+    //smaller segments would make the admission too random
+    private static final int MIN_SEGMENT_BLOCKS = 64;
+
+    private final int blockSize;
+    private final int capacity;
+    private final ByteBuffer arena;
+    private final AtomicLongArray generations;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes  memory budget, 0 disables the cache
+     * @param blockSize size of one block
+     */
+    public BlockCache(long maxBytes, int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid block size");
+        }
+        this.blockSize = blockSize;
+        this.capacity = (int) Math.min(maxBytes / blockSize, Integer.MAX_VALUE / blockSize);
+        this.arena = ByteBuffer.allocateDirect(capacity * blockSize);
+        this.generations = new AtomicLongArray(capacity);
+        int count = Integer.highestOneBit(Math.max(Math.min(MAX_SEGMENTS, capacity / MIN_SEGMENT_BLOCKS), 1));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            //slots split evenly, the first segment takes the rest
+            int segmentCapacity = capacity / count + (i == 0 ? capacity % count : 0);
+            int firstSlot = i == 0 ? 0 : capacity % count + i * (capacity / count);
+            segments[i] = new Segment(firstSlot, segmentCapacity);
+        }
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Read file bytes at position to the buffer, blocks not in cache are read by the loader and cached.
+     *
+     * @param path     resolved path
+     * @param fileKey  current file key of the file
+     * @param position position in file
+     * @param target   buffer, filled up to its limit or to end of file
+     * @param loader   reader of the file
+     * @return number of bytes read
+     */
+    public int read(Path path, Object fileKey, long position, ByteBuffer target, BlockLoader loader)
+            throws IOException {
+        int total = 0;
+        while (target.hasRemaining()) {
+            int read = readBlock(path, fileKey, position, target, loader);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Drop blocks of the file
+     */
+    public void invalidateFile(Path path) {
+        for (Segment segment : segments) {
+            segment.invalidate(path, false);
+        }
+    }
+
+    /**
+     * Drop blocks of the path and of all paths under it (path is a directory)
+     */
+    public void invalidate(Path path) {
+        for (Segment segment : segments) {
+            segment.invalidate(path, true);
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private int readBlock(Path path, Object fileKey, long position, ByteBuffer target, BlockLoader loader)
+            throws IOException {
+        long index = position / blockSize;
+        int offsetInBlock = (int) (position % blockSize);
+        int hash = hash(path, index);
+        Segment segment = segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+
+        Block block = segment.find(hash, path, index, fileKey, offsetInBlock + target.remaining());
+        if (block != null) {
+            int length = Math.min(target.remaining(), block.length - offsetInBlock);
+            target.put(target.position(), arena, block.slot * blockSize + offsetInBlock, length);
+            //copied data must be read before the generation is checked
+            VarHandle.loadLoadFence();
+            if (generations.get(block.slot) == block.generation) {
+                target.position(target.position() + length);
+                hits.increment();
+                return length;
+            }
+        }
+        misses.increment();
+        return segment.load(hash, path, fileKey, index, offsetInBlock, target, loader);
+    }
+
+    private static int hash(Path path, long index) {
+        return path.hashCode() * 31 + Long.hashCode(index);
+    }
+
+    /**
+     * Part of the cache with its own lock and slots
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final Map<Path, Map<Long, Block>> blocks = new HashMap<>();
+        private final Deque<Integer> freeSlots = new ArrayDeque<>();
+        private final BlockList probation = new BlockList();
+        private final BlockList protectedBlocks = new BlockList();
+        private final FrequencySketch sketch;
+
+        private Segment(int firstSlot, int capacity) {
+            this.capacity = capacity;
+            this.sketch = new FrequencySketch(Math.max(capacity, 16));
+            for (int slot = firstSlot; slot < firstSlot + capacity; slot++) {
+                freeSlots.add(slot);
+            }
+        }
+
+        /**
+         * @param end end of the requested bytes in the block, a partial block must have them
+         * @return cached block of the file, null on miss
+         */
+        private Block find(int hash, Path path, long index, Object fileKey, int end) {
+            lock.lock();
+            try {
+                sketch.increment(hash);
+                Map<Long, Block> fileBlocks = blocks.get(path);
+                Block block = fileBlocks == null ? null : fileBlocks.get(index);
+                if (block == null || !Objects.equals(block.fileKey, fileKey)
+                        || (block.length < blockSize && block.length < end)) {
+                    return null;
+                }
+                onHit(block);
+                return block;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int load(int hash, Path path, Object fileKey, long index, int offsetInBlock, ByteBuffer target,
+                         BlockLoader loader) throws IOException {
+            Integer slot;
+            lock.lock();
+            try {
+                slot = reserveSlot(hash);
+            } finally {
+                lock.unlock();
+            }
+            if (slot == null) {
+                //not admitted, read directly
+                return Math.max(loader.read(index * blockSize + offsetInBlock, target), 0);
+            }
+
+            int length = 0;
+            try {
+                ByteBuffer data = arena.slice(slot * blockSize, blockSize);
+                int read;
+                do {
+                    read = loader.read(index * blockSize + data.position(), data);
+                } while (read > 0 && data.hasRemaining());
+                length = data.position();
+            } finally {
+                if (length == 0) {
+                    releaseSlot(slot);
+                }
+            }
+
+            int copied = Math.max(Math.min(target.remaining(), length - offsetInBlock), 0);
+            target.put(target.position(), arena, slot * blockSize + offsetInBlock, copied);
+            target.position(target.position() + copied);
+            if (length == 0) {
+                return copied;
+            }
+
+            lock.lock();
+            try {
+                Map<Long, Block> fileBlocks = blocks.computeIfAbsent(path, k -> new HashMap<>());
+                Block existing = fileBlocks.get(index);
+                if (existing != null && Objects.equals(existing.fileKey, fileKey) && existing.length >= length) {
+                    //loaded concurrently by other thread
+                    freeSlots.push(slot);
+                }
+                else {
+                    if (existing != null) {
+                        free(existing);
+                    }
+                    Block block = new Block(path, index, fileKey, slot, generations.get(slot), length);
+                    fileBlocks.put(index, block);
+                    probation.addLast(block);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return copied;
+        }
+
+        /**
+         * @param tree also paths under the path
+         */
+        private void invalidate(Path path, boolean tree) {
+            lock.lock();
+            try {
+                if (!tree) {
+                    Map<Long, Block> fileBlocks = blocks.remove(path);
+                    if (fileBlocks != null) {
+                        fileBlocks.values().forEach(this::free);
+                    }
+                    return;
+                }
+                Iterator<Map.Entry<Path, Map<Long, Block>>> iterator = blocks.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Path, Map<Long, Block>> next = iterator.next();
+                    if (next.getKey().startsWith(path)) {
+                        iterator.remove();
+                        next.getValue().values().forEach(this::free);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private int size() {
+            lock.lock();
+            try {
+                return capacity - freeSlots.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void releaseSlot(int slot) {
+            lock.lock();
+            try {
+                freeSlots.push(slot);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Get free slot or evict a victim if the candidate is more frequent
+         *
+         * @return slot or null if candidate is not admitted
+         */
+        private Integer reserveSlot(int candidateHash) {
+            if (!freeSlots.isEmpty()) {
+                return freeSlots.pop();
+            }
+            Block victim = probation.first() != null ? probation.first() : protectedBlocks.first();
+            if (victim == null
+                    || sketch.frequency(candidateHash) <= sketch.frequency(hash(victim.path, victim.index))) {
+                return null;
+            }
+            removeFromIndex(victim);
+            free(victim);
+            evictions.increment();
+            return freeSlots.pop();
+        }
+
+        private void onHit(Block block) {
+            if (block.list == protectedBlocks) {
+                protectedBlocks.moveToLast(block);
+                return;
+            }
+            probation.remove(block);
+            protectedBlocks.addLast(block);
+            if (protectedBlocks.size > capacity * PROTECTED_PERCENT / 100) {
+                Block demoted = protectedBlocks.first();
+                protectedBlocks.remove(demoted);
+                probation.addLast(demoted);
+            }
+        }
+
+        private void removeFromIndex(Block block) {
+            Map<Long, Block> fileBlocks = blocks.get(block.path);
+            if (fileBlocks != null) {
+                fileBlocks.remove(block.index);
+                if (fileBlocks.isEmpty()) {
+                    blocks.remove(block.path);
+                }
+            }
+        }
+
+        private void free(Block block) {
+            block.list.remove(block);
+            generations.incrementAndGet(block.slot);
+            //new data of the slot must not be visible before the generation change
+            VarHandle.fullFence();
+            freeSlots.push(block.slot);
+        }
+    }
+
+    private static final class Block {
+        private final Path path;
+        private final long index;
+        private final Object fileKey;
+        private final int slot;
+        private final long generation;
+        private final int length;
+
+        private BlockList list;
+        private Block prev;
+        private Block next;
+
+        private Block(Path path, long index, Object fileKey, int slot, long generation, int length) {
+            this.path = path;
+            this.index = index;
+            this.fileKey = fileKey;
+            this.slot = slot;
+            this.generation = generation;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Doubly linked list of blocks, the first one is the least recently used
+     */
+    private static final class BlockList {
+        private Block head;
+        private Block tail;
+        private int size;
+
+        private Block first() {
+            return head;
+        }
+
+        private void addLast(Block block) {
+            block.list = this;
+            block.prev = tail;
+            block.next = null;
+            if (tail == null) {
+                head = block;
+            }
+            else {
+                tail.next = block;
+            }
+            tail = block;
+            size++;
+        }
+
+        private void remove(Block block) {
+            if (block.prev == null) {
+                head = block.next;
+            }
+            else {
+                block.prev.next = block.next;
+            }
+            if (block.next == null) {
+                tail = block.prev;
+            }
+            else {
+                block.next.prev = block.prev;
+            }
+            block.prev = null;
+            block.next = null;
+            size--;
+        }
+
+        private void moveToLast(Block block) {
+            if (tail != block) {
+                remove(block);
+                addLast(block);
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of recent access frequency, counters are halved periodically so old popularity fades away
+     */
+    private static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int resetThreshold;
+        private int additions;
+
+        private FrequencySketch(int capacity) {
+            int width = Integer.highestOneBit(capacity * 4 - 1) << 1;
+            this.counters = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.resetThreshold = capacity * 10;
+        }
+
+        private void increment(int hash) {
+            for (int i = 0; i < DEPTH; i++) {
+                int index = index(hash, i);
+                if (counters[i][index] < MAX_COUNT) {
+                    counters[i][index]++;
+                }
+            }
+            if (++additions >= resetThreshold) {
+                for (byte[] row : counters) {
+                    for (int j = 0; j < row.length; j++) {
+                        row[j] >>= 1;
+                    }
+                }
+                additions /= 2;
+            }
+        }
+
+        private int frequency(int hash) {
+            int min = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                min = Math.min(min, counters[i][index(hash, i)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.id.fileserver.service;
+
+import java.nio.file.Path;
+
+/**
+ * Listener of changes in the root directory made outside the service
+ */
+public interface FileChangeListener {
+
+    /**
+     * Path was created, modified or deleted. If it is a directory, content under it may have changed as well.
+     *
+     * @param path resolved path
+     */
+    void onChange(Path path);
+
+    /**
+     * Some changes were lost, anything may have changed
+     */
+    void onReset();
+
+}
@@ -0,0 +1,70 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.service.LeaseCache.Lease;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cache of open file channels, separate read and append channels are kept for a file.
+ * Channels are validated against file key, so a file replaced outside the service gets a new channel.
+ */
+public class FileChannelCache implements Closeable {
+
+    public enum Mode {
+        READ(StandardOpenOption.READ),
+        APPEND(StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+        private final OpenOption[] options;
+
+        Mode(OpenOption... options) {
+            this.options = options;
+        }
+    }
+
+    private record Key(Path path, Mode mode) {
+    }
+
+    private final LeaseCache<Key, FileChannel> cache;
+
+    public FileChannelCache(int maxOpen, long maxIdleNanos) {
+        this.cache = new LeaseCache<>(maxOpen, maxIdleNanos, key -> FileChannel.open(key.path(), key.mode().options));
+    }
+
+    /**
+     * Get open channel
+     *
+     * @param path    resolved path
+     * @param mode    read or append
+     * @param fileKey current file key of the path (see {@link java.nio.file.attribute.BasicFileAttributes#fileKey()})
+     * @return lease of channel, must be closed after use (channel itself must not be closed)
+     */
+    public Lease<FileChannel> acquire(Path path, Mode mode, Object fileKey) throws IOException {
+        return cache.acquire(new Key(path, mode), fileKey);
+    }
+
+    /**
+     * Drop channels of the path and of all paths under it (path is a directory)
+     */
+    public void invalidate(Path path) {
+        cache.invalidate(key -> key.path().startsWith(path));
+    }
+
+    public void evictIdle() {
+        cache.evictIdle();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+}
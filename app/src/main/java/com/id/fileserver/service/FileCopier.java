@@ -0,0 +1,220 @@
+package com.id.fileserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Copies file content without passing it through the heap.
+ * <p>
+ * Large files are cloned first (copy-on-write reflink, e.g. on btrfs and xfs), which shares the data blocks
+ * and is near-instant regardless of the size. Java has no API for the clone ioctl, so it is done by
+ * {@code cp --reflink=always}; a file store which can't clone is not tried again.
+ * Other files are copied channel to channel (transferTo, done by the kernel with copy_file_range/sendfile on Linux).
+ * <p>
+ * Content goes to a temporary file in the staging directory which then replaces the target atomically,
+ * so a copy failing halfway never leaves a truncated target. The staging directory is outside the root directory,
+ * so listing and searches never see the temporary files, and on the same file system, so the move is a rename.
+ * Files left there by a crash are deleted on {@link #start()}.
+ */
+@Slf4j
+public class FileCopier {
+
+    //cloning takes no time, a cp running longer is stuck
+    private static final long CLONE_TIMEOUT_SECONDS = 60;
+
+    private final Path stagingDir;
+    private final long cloneMinSize;
+    private final ConcurrentMap<FileStore, Boolean> cloneSupport = new ConcurrentHashMap<>();
+    private final LongAdder clonedFiles = new LongAdder();
+    private final LongAdder transferredFiles = new LongAdder();
+    private final AtomicBoolean crossStoreLogged = new AtomicBoolean();
+
+    /**
+     * Copier which never clones
+     *
+     * @param stagingDir directory of temporary files
+     */
+    public FileCopier(Path stagingDir) {
+        this(stagingDir, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param stagingDir   directory of temporary files, outside the root directory and on the same file system
+     * @param cloneMinSize files of this size and larger are cloned if the file store supports it,
+     *                     smaller ones are not worth starting a process
+     */
+    public FileCopier(Path stagingDir, long cloneMinSize) {
+        this.stagingDir = stagingDir;
+        this.cloneMinSize = cloneMinSize;
+    }
+
+    /**
+     * Create the staging directory, delete temporary files of copies interrupted by a crash
+     */
+    public void start() throws IOException {
+        Files.createDirectories(stagingDir);
+        try (Stream<Path> files = Files.list(stagingDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (Files.deleteIfExists(file)) {
+                    log.info("Deleted unfinished copy: {}", file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy file, target is created or replaced. Copy of a file to itself does nothing
+     *
+     * @param keepModified set modification time of the source on the target, otherwise the target is modified now
+     * @return number of bytes copied
+     */
+    public long copy(Path source, Path target, boolean keepModified) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        if (Files.exists(target) && Files.isSameFile(source, target)) {
+            return 0;
+        }
+
+        Path temp = stagingDir.resolve(UUID.randomUUID() + ".tmp");
+        try {
+            long copied;
+            if (attrs.size() >= cloneMinSize && clone(source, temp)) {
+                copied = attrs.size();
+                clonedFiles.increment();
+            }
+            else {
+                copied = transfer(source, temp);
+                transferredFiles.increment();
+            }
+            if (keepModified) {
+                Files.setLastModifiedTime(temp, attrs.lastModifiedTime());
+            }
+            replace(temp, target);
+            return copied;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public long clonedCount() {
+        return clonedFiles.sum();
+    }
+
+    public long transferredCount() {
+        return transferredFiles.sum();
+    }
+
+    private void replace(Path temp, Path target) throws IOException {
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            //staging on another file system, the move copies the content into the target
+            if (crossStoreLogged.compareAndSet(false, true)) {
+                log.warn("Staging directory is on another file system than the target, copies are not atomic: {}",
+                        stagingDir);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private long transfer(Path source, Path target) throws IOException {
+        long position = 0;
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             //target is the temporary file, a failed clone may have created it
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * @return false if the file could not be cloned, target (a new file) is then left to be written
+     */
+    private boolean clone(Path source, Path target) throws IOException {
+        FileStore store = Files.getFileStore(source);
+        Path targetDir = target.toAbsolutePath().getParent();
+        //clone never crosses file systems
+        if (Boolean.FALSE.equals(cloneSupport.get(store)) || !store.equals(Files.getFileStore(targetDir))) {
+            return false;
+        }
+
+        Process process;
+        try {
+            process = new ProcessBuilder("cp", "--reflink=always", "--", source.toString(), target.toString())
+                    .redirectErrorStream(true)
+                    .start();
+        } catch (IOException e) {
+            //cp is not available
+            unsupported(store, e.getMessage());
+            return false;
+        }
+        try {
+            if (!process.waitFor(CLONE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                log.warn("Clone timed out, file is copied: {}", source);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while cloning: " + source);
+        }
+
+        if (process.exitValue() == 0) {
+            cloneSupport.put(store, true);
+            return true;
+        }
+        //process has exited, its few lines of output are buffered in the pipe
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8).trim();
+        if (isUnsupported(output)) {
+            unsupported(store, output);
+        }
+        else {
+            log.warn("Clone failed, file is copied: {}: {}", source, output);
+        }
+        return false;
+    }
+
+    /**
+     * Errors of cp saying the file system can't clone at all, not that this one file failed
+     */
+    private static boolean isUnsupported(String output) {
+        return output.contains("Operation not supported")
+                || output.contains("Inappropriate ioctl")
+                || output.contains("Invalid cross-device link")
+                || output.contains("unrecognized option");
+    }
+
+    private void unsupported(FileStore store, String reason) {
+        //failure of a store which cloned before is not a reason to stop trying
+        if (cloneSupport.putIfAbsent(store, false) == null) {
+            log.info("File store doesn't support cloning, files are copied: {}: {}", store, reason);
+        }
+    }
+
+}
@@ -0,0 +1,267 @@
+package com.id.fileserver.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Search of lines in file content.
+ * <p>
+ * Files are read sequentially with a large buffer. Literal patterns are matched on the bytes, only matching lines
+ * are decoded; regular expressions are matched on lines decoded as UTF-8. Lines longer than the buffer are matched
+ * in buffer-sized pieces.
+ * <p>
+ * Every search has a time budget, checked between buffers and also inside of a regex match (so a pathological
+ * pattern can't run away), and the number of searches running at once is limited.
+ */
+public class FileGrep {
+
+    /**
+     * Matching line
+     *
+     * @param offset     offset of the line start in bytes
+     * @param lineNumber line number, from 1
+     * @param line       line without the line end, cut to {@link #MAX_LINE_TEXT} chars
+     */
+    public record Match(Path path, long offset, long lineNumber, String line) {
+    }
+
+    public static final int MAX_LINE_TEXT = 1024;
+    private static final String REGEX_CHARS = "\\^$.|?*+()[]{}";
+
+    private final int bufferSize;
+    private final long maxNanos;
+    private final Semaphore permits;
+
+    /**
+     * @param bufferSize    read buffer size, also the max length of a matched line
+     * @param maxMillis     time budget of one search
+     * @param maxConcurrent max number of searches at once
+     */
+    public FileGrep(int bufferSize, long maxMillis, int maxConcurrent) {
+        this.bufferSize = bufferSize;
+        this.maxNanos = TimeUnit.MILLISECONDS.toNanos(maxMillis);
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Start a search, it must be closed when done
+     *
+     * @throws ServerBusyException if there are too many searches
+     */
+    public Search start(Pattern pattern) {
+        if (!permits.tryAcquire()) {
+            throw new ServerBusyException("Too many searches");
+        }
+        return new Search(pattern, System.nanoTime() + maxNanos);
+    }
+
+    private static boolean isLiteral(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return false;
+        }
+        for (char c : pattern.pattern().toCharArray()) {
+            if (REGEX_CHARS.indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return !pattern.pattern().isEmpty();
+    }
+
+    private static int indexOf(byte[] bytes, int start, int end, byte[] literal) {
+        byte first = literal[0];
+        int last = end - literal.length;
+        outer:
+        for (int i = start; i <= last; i++) {
+            if (bytes[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < literal.length; j++) {
+                if (bytes[i + j] != literal[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * One search with its time budget, may be shared by threads searching a tree
+     */
+    public final class Search implements Closeable {
+        private final Pattern pattern;
+        private final byte[] literal;
+        private final long deadline;
+        private volatile boolean exceeded;
+        private boolean closed;
+
+        private Search(Pattern pattern, long deadline) {
+            this.pattern = pattern;
+            this.literal = isLiteral(pattern) ? pattern.pattern().getBytes(StandardCharsets.UTF_8) : null;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Search lines of a file
+         *
+         * @param sink receives matches, returns false to stop
+         * @return false if stopped by the sink or the budget
+         */
+        public boolean grep(Path file, Predicate<Match> sink) throws IOException {
+            Matcher matcher = literal == null ? pattern.matcher("") : null;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(bufferSize, Math.max(channel.size(), 1)));
+                byte[] bytes = buffer.array();
+                long bufferOffset = 0;
+                long lineNumber = 1;
+                boolean eof = false;
+                while (!eof) {
+                    if (isExceeded()) {
+                        return false;
+                    }
+                    eof = channel.read(buffer) < 0;
+                    int end = buffer.position();
+                    int lineStart = 0;
+                    for (int i = 0; i < end; i++) {
+                        if (bytes[i] == '\n') {
+                            if (!matchLine(file, bytes, lineStart, i, bufferOffset + lineStart, lineNumber,
+                                    matcher, sink)) {
+                                return false;
+                            }
+                            lineNumber++;
+                            lineStart = i + 1;
+                        }
+                    }
+                    if ((eof || lineStart == 0 && end == bytes.length) && lineStart < end) {
+                        //last line without line end, or a piece of a line longer than the buffer
+                        if (!matchLine(file, bytes, lineStart, end, bufferOffset + lineStart, lineNumber,
+                                matcher, sink)) {
+                            return false;
+                        }
+                        lineStart = end;
+                    }
+                    //rest of the line is moved to the start
+                    System.arraycopy(bytes, lineStart, bytes, 0, end - lineStart);
+                    buffer.position(end - lineStart);
+                    bufferOffset += lineStart;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return whether the search ran out of time, it should stop
+         */
+        public boolean isExceeded() {
+            if (!exceeded && System.nanoTime() - deadline > 0) {
+                exceeded = true;
+            }
+            return exceeded;
+        }
+
+        /**
+         * @return whether the search was stopped because it ran out of time
+         */
+        public boolean isStopped() {
+            return exceeded;
+        }
+
+        private boolean matchLine(Path file, byte[] bytes, int start, int end, long offset, long lineNumber,
+                                  Matcher matcher, Predicate<Match> sink) {
+            if (end > start && bytes[end - 1] == '\r') {
+                end--;
+            }
+            String text = null;
+            if (literal != null) {
+                if (indexOf(bytes, start, end, literal) < 0) {
+                    return true;
+                }
+            }
+            else {
+                text = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+                try {
+                    if (!matcher.reset(watch(text)).find()) {
+                        return true;
+                    }
+                } catch (BudgetExceededException e) {
+                    return false;
+                }
+            }
+            if (text == null) {
+                text = new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            }
+            if (text.length() > MAX_LINE_TEXT) {
+                text = text.substring(0, MAX_LINE_TEXT);
+            }
+            return sink.test(new Match(file, offset, lineNumber, text));
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                permits.release();
+            }
+        }
+
+        /**
+         * Text which stops a regex match (by exception) when the budget is exceeded
+         */
+        private CharSequence watch(String text) {
+            return new WatchedText(text, 0, text.length());
+        }
+
+        private final class WatchedText implements CharSequence {
+            private final String text;
+            private final int start;
+            private final int end;
+            private int reads;
+
+            private WatchedText(String text, int start, int end) {
+                this.text = text;
+                this.start = start;
+                this.end = end;
+            }
+
+            @Override
+            public int length() {
+                return end - start;
+            }
+
+            @Override
+            public char charAt(int index) {
+                if ((++reads & 0xFFFF) == 0 && isExceeded()) {
+                    throw new BudgetExceededException();
+                }
+                return text.charAt(start + index);
+            }
+
+            @Override
+            public CharSequence subSequence(int from, int to) {
+                return new WatchedText(text, start + from, start + to);
+            }
+
+            @Override
+            public String toString() {
+                return text.substring(start, end);
+            }
+        }
+    }
+
+    private static class BudgetExceededException extends RuntimeException {
+        private BudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
+}
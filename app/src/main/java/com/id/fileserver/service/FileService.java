@@ -1,24 +1,108 @@
 package com.id.fileserver.service;
 
+import com.id.fileserver.model.DirectoryPage;
 import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.GrepMatch;
+import com.id.fileserver.model.GrepResult;
+import com.id.fileserver.model.TreeSummary;
 
 import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface FileService {
 
+    /**
+     * Byte range of a file
+     */
+    record Range(long offset, long length) {
+    }
+
+    /**
+     * Chooses the range to transfer once the size of the file is known
+     */
+    @FunctionalInterface
+    interface RangeSelector {
+
+        /**
+         * @param size size of the file readers may see, the range must be within it
+         * @return range to transfer, null to transfer nothing
+         */
+        Range select(long size) throws IOException;
+    }
+
     FileInfo getFileInfo(String path) throws IOException;
 
     List<FileInfo> listDirectory(String path) throws IOException;
 
+    DirectoryPage listDirectory(String path, int limit, String cursor) throws IOException;
+
+    /**
+     * Lazily read children of a directory, stream must be closed after use
+     */
+    Stream<FileInfo> streamDirectory(String path) throws IOException;
+
+    /**
+     * Find files and directories in a directory tree, see {@link #streamFind(String, String, int, int)}.
+     * Limit is capped like a page of directory listing
+     */
+    List<FileInfo> find(String path, String glob, int maxDepth, int limit) throws IOException;
+
+    /**
+     * Lazily find files and directories in a directory tree matching a glob, in no particular order.
+     * Glob without a separator matches names, otherwise it matches paths relative to the directory.
+     * Stream must be closed after use, the search is stopped then
+     *
+     * @param maxDepth max depth below the directory (1 for its children only), 0 for no limit
+     * @param limit    max number of entries
+     */
+    Stream<FileInfo> streamFind(String path, String glob, int maxDepth, int limit) throws IOException;
+
+    /**
+     * Search lines of a file or of all files in a directory tree, see {@link #streamGrep(String, String, int)}.
+     * Max number of matches is capped like a page of directory listing
+     */
+    GrepResult grep(String path, String pattern, int maxMatches) throws IOException;
+
+    /**
+     * Lazily search lines of a file or of all files in a directory tree matching a regular expression
+     * (plain text is matched faster). Matches come in order within a file, files in no particular order.
+     * The search is limited in time and in the number of searches at once.
+     * Stream must be closed after use, the search is stopped then
+     *
+     * @param maxMatches max number of matches
+     */
+    Stream<GrepMatch> streamGrep(String path, String pattern, int maxMatches) throws IOException;
+
+    /**
+     * Totals of a directory tree, from the tree index when it is indexed
+     */
+    TreeSummary getTreeSummary(String path) throws IOException;
+
     FileInfo createFile(String path) throws IOException;
 
     FileInfo createDirectory(String path) throws IOException;
 
     void deleteFile(String path) throws IOException;
 
+    /**
+     * Check the path without touching the file system, e.g. before an operation is started in background
+     *
+     * @throws IllegalArgumentException if the path is invalid
+     * @throws SecurityException        if the path is outside the root directory
+     */
+    void validatePath(String path);
+
     void deleteDirectory(String path) throws IOException;
 
+    /**
+     * Delete directory, reporting progress. Stops with {@link java.util.concurrent.CancellationException}
+     * if the progress is cancelled
+     */
+    void deleteDirectory(String path, TreeProgress progress) throws IOException;
+
     FileInfo moveFile(String sourcePath, String targetPath) throws IOException;
 
     FileInfo moveDirectory(String sourcePath, String targetPath) throws IOException;
@@ -27,8 +111,52 @@ public interface FileService {
 
     FileInfo copyDirectory(String sourcePath, String targetPath) throws IOException;
 
+    /**
+     * Copy directory, reporting progress. Stops with {@link java.util.concurrent.CancellationException}
+     * if the progress is cancelled
+     */
+    FileInfo copyDirectory(String sourcePath, String targetPath, TreeProgress progress) throws IOException;
+
     void appendToFile(String path, String data) throws IOException;
 
     String readFromFile(String path, int offset, int length) throws IOException;
 
+    /**
+     * Append raw bytes, see {@link #appendToFile(String, String)}
+     */
+    void appendBytesToFile(String path, byte[] data) throws IOException;
+
+    /**
+     * Read raw bytes, see {@link #readFromFile(String, int, int)}
+     */
+    byte[] readBytesFromFile(String path, int offset, int length) throws IOException;
+
+    /**
+     * Wait until a file has bytes past the offset. Waiting requests are woken by appends, no polling
+     *
+     * @param offset        offset in file in bytes
+     * @param timeoutMillis max wait, limited by app.follow.max-wait-millis
+     * @return true if there are bytes past the offset, false if nothing was appended within the timeout
+     */
+    boolean awaitAppend(String path, long offset, long timeoutMillis) throws IOException;
+
+    /**
+     * Read binary data from a file, waiting up to the timeout if there are no bytes past the offset yet
+     *
+     * @return data, empty if nothing was appended within the timeout
+     */
+    byte[] readFollow(String path, int offset, int length, long timeoutMillis) throws IOException;
+
+    long transferToFile(String path, ReadableByteChannel source) throws IOException;
+
+    long transferFromFile(String path, long offset, long length, WritableByteChannel target) throws IOException;
+
+    /**
+     * Transfer a range of a file chosen by the selector. The size given to the selector and the transferred content
+     * are read under the same lock, so exactly the selected range is transferred (e.g. as promised by headers)
+     *
+     * @return number of bytes transferred
+     */
+    long transferFromFile(String path, RangeSelector selector, WritableByteChannel target) throws IOException;
+
 }
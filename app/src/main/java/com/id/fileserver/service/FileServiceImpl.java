@@ -1,6 +1,13 @@
 package com.id.fileserver.service;
 
+import com.id.fileserver.model.DirectoryPage;
 import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.GrepMatch;
+import com.id.fileserver.model.GrepResult;
+import com.id.fileserver.model.TreeSummary;
+import com.id.fileserver.service.FileChannelCache.Mode;
+import com.id.fileserver.service.LeaseCache.Lease;
+import com.id.fileserver.service.PathLocks.LockMode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
@@ -8,18 +15,31 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -29,120 +49,329 @@ import java.util.stream.Stream;
 public class FileServiceImpl implements FileService {
 
     private final Path rootPath;
-    private final ConcurrentMap<Path, ReentrantLock> fileLocks;
+    private final PathLocks fileLocks;
+    private final BufferPool transferBuffers;
+    private final BufferPool readBuffers;
+    private final FileServiceLimits limits;
+    private final FileChannelCache channelCache;
+    private final MappedFileCache mappedFiles;
+    private final BlockCache blockCache;
+    private final MetadataCache metadataCache;
+    private final AppendBatcher appendBatcher;
+    private final TreeOperations treeOperations;
+    private final FileCopier fileCopier;
+    private final TreeIndex treeIndex;
+    private final PathIndex pathIndex;
+    private final FileGrep fileGrep;
+    private final FileWaiters fileWaiters;
 
     @Override
     public FileInfo getFileInfo(String relativePath) throws IOException {
         Path path = resolvePath(relativePath);
-        checkExists(relativePath, path);
-        return createFileInfo(path);
+        return createFileInfo(path, checkExists(relativePath, path));
     }
 
     @Override
     public List<FileInfo> listDirectory(String relativePath) throws IOException {
+        try (Stream<FileInfo> children = streamDirectory(relativePath)) {
+            return children.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public DirectoryPage listDirectory(String relativePath, int limit, String cursor) throws IOException {
         Path path = resolvePath(relativePath);
-        checkExists(relativePath, path);
         checkIsDirectory(relativePath, path);
+        if (limit <= 0 || limit > limits.maxPageSize()) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
+        DirectoryCursor start = DirectoryCursor.decode(cursor);
 
-        try (Stream<Path> paths = Files.list(path)) {
-            return paths.map(p -> {
-                try {
-                    return createFileInfo(p);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+        long position = start == null ? 0 : start.position();
+        DirectoryStream<Path> children = Files.newDirectoryStream(path);
+        try {
+            Iterator<Path> iterator = children.iterator();
+            if (start != null && !start.name().equals(skip(iterator, position))) {
+                //directory changed since the previous page
+                children.close();
+                position = locate(path, start);
+                children = Files.newDirectoryStream(path);
+                iterator = children.iterator();
+                skip(iterator, position);
+            }
+            List<FileInfo> entries = new ArrayList<>(limit);
+            Path last = null;
+            while (entries.size() < limit && iterator.hasNext()) {
+                last = iterator.next();
+                position++;
+                FileInfo info = childInfo(last);
+                if (info != null) {
+                    entries.add(info);
                 }
-            }).collect(Collectors.toList());
+            }
+            String nextCursor = iterator.hasNext()
+                    ? new DirectoryCursor(position, last.getFileName().toString()).encode()
+                    : null;
+            return DirectoryPage.builder().entries(entries).nextCursor(nextCursor).build();
+        } finally {
+            children.close();
         }
     }
 
     @Override
-    public FileInfo createFile(String relativePath) throws IOException {
+    public Stream<FileInfo> streamDirectory(String relativePath) throws IOException {
+        Path path = resolvePath(relativePath);
+        checkIsDirectory(relativePath, path);
+
+        Stream<Path> children = Files.list(path);
+        return children.map(this::childInfo).filter(Objects::nonNull);
+    }
+
+    @Override
+    public List<FileInfo> find(String relativePath, String glob, int maxDepth, int limit) throws IOException {
+        resolvePath(relativePath);
+        if (limit <= 0 || limit > limits.maxPageSize()) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
+        try (Stream<FileInfo> found = streamFind(relativePath, glob, maxDepth, limit)) {
+            return found.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Stream<FileInfo> streamFind(String relativePath, String glob, int maxDepth, int limit) throws IOException {
+        Path path = resolvePath(relativePath);
+        checkIsDirectory(relativePath, path);
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("Invalid depth");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
+
+        PathMatcher matcher = globMatcher(glob);
+        if (pathIndex.isReady()) {
+            return pathIndex.find(path, matcher, maxDepth)
+                    .limit(limit)
+                    .map(entry -> createFileInfo(entry.path(), entry.size(), entry.directory()));
+        }
+        //not locked, like listing: entries changed meanwhile may be missed or skipped
+        return treeOperations.find(path, matcher, maxDepth, limit)
+                .map(found -> createFileInfo(found.path(), found.attrs()));
+    }
+
+    @Override
+    public GrepResult grep(String relativePath, String pattern, int maxMatches) throws IOException {
         Path path = resolvePath(relativePath);
-        Path parentPath = resolvePath(path.getParent().toString());
+        if (maxMatches <= 0 || maxMatches > limits.maxPageSize()) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
+        checkExists(relativePath, path);
 
-        Path normalizedPath = Paths.get(relativePath).normalize();
-        Path parentDir = normalizedPath.getParent();
-        if (parentDir != null) {
-            checkExists(parentDir.toString(), parentPath);
+        try (FileGrep.Search search = fileGrep.start(compilePattern(pattern));
+             Stream<FileGrep.Match> found = treeOperations.grep(path, search, maxMatches + 1)) {
+            List<GrepMatch> matches = found.map(this::createGrepMatch).collect(Collectors.toList());
+            boolean complete = matches.size() <= maxMatches && !search.isStopped();
+            return GrepResult.builder()
+                    .matches(complete ? matches : matches.subList(0, Math.min(matches.size(), maxMatches)))
+                    .complete(complete)
+                    .build();
         }
-        Files.createFile(path);
-        return createFileInfo(path);
+    }
+
+    @Override
+    public Stream<GrepMatch> streamGrep(String relativePath, String pattern, int maxMatches) throws IOException {
+        Path path = resolvePath(relativePath);
+        if (maxMatches <= 0) {
+            throw new IllegalArgumentException("Invalid limit");
+        }
+        checkExists(relativePath, path);
+
+        //not locked, like find: files changed meanwhile may be read partially
+        FileGrep.Search search = fileGrep.start(compilePattern(pattern));
+        try {
+            return treeOperations.grep(path, search, maxMatches)
+                    .map(this::createGrepMatch)
+                    .onClose(search::close);
+        } catch (RuntimeException e) {
+            search.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public TreeSummary getTreeSummary(String relativePath) throws IOException {
+        Path path = resolvePath(relativePath);
+        //tree is not changed by the service while it is being read into the index
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.SHARED)) {
+            checkIsDirectory(relativePath, path);
+            TreeIndex.Totals totals = treeIndex.summary(path);
+            return TreeSummary.builder()
+                    .path(rootPath.relativize(path).toString())
+                    .size(totals.size())
+                    .fileCount(totals.files())
+                    .directoryCount(totals.directories())
+                    .lastModified(totals.lastModified())
+                    .build();
+        }
+    }
+
+    @Override
+    public FileInfo createFile(String relativePath) throws IOException {
+        Path path = resolvePath(relativePath);
+        resolvePath(path.getParent().toString());
+
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.EXCLUSIVE)) {
+            Files.createFile(path);
+            treeIndex.refresh(path);
+            pathIndex.onChange(path);
+        } catch (NoSuchFileException e) {
+            //parent directory doesn't exist
+            Path parentDir = Paths.get(relativePath).normalize().getParent();
+            throw new NoSuchFileException(parentDir != null ? parentDir.toString() : relativePath);
+        }
+        return createFileInfo(path, 0, false);
     }
 
     @Override
     public FileInfo createDirectory(String relativePath) throws IOException {
         Path path = resolvePath(relativePath);
-        Path result = Files.createDirectories(path);
-        return createFileInfo(result);
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.EXCLUSIVE)) {
+            Path result = Files.createDirectories(path);
+            treeIndex.refresh(path);
+            pathIndex.onChange(path);
+            return createFileInfo(result, 0, true);
+        }
     }
 
     @Override
     public void deleteFile(String relativePath) throws IOException {
         Path path = resolvePath(relativePath);
-        checkExists(relativePath, path);
-        checkIsFile(relativePath, path);
-        Files.delete(path);
-        fileLocks.remove(path);
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.EXCLUSIVE)) {
+            checkIsFile(relativePath, path);
+            Files.delete(path);
+            invalidateCaches(path);
+            treeIndex.remove(path);
+            pathIndex.onChange(path);
+        }
+    }
+
+    @Override
+    public void validatePath(String relativePath) {
+        resolvePath(relativePath);
     }
 
     @Override
     public void deleteDirectory(String relativePath) throws IOException {
+        deleteDirectory(relativePath, new TreeProgress());
+    }
+
+    @Override
+    public void deleteDirectory(String relativePath, TreeProgress progress) throws IOException {
         Path path = resolvePath(relativePath);
-        checkExists(relativePath, path);
-        checkIsDirectory(relativePath, path);
 
-        FileUtils.deleteDirectory(path.toFile());
+        //whole tree is locked, nothing under it can be read or changed meanwhile
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.EXCLUSIVE)) {
+            checkIsDirectory(relativePath, path);
+            try {
+                treeOperations.delete(path, progress);
+            } finally {
+                invalidateCaches(path);
+                //what is left of a cancelled delete is read again
+                treeIndex.refresh(path);
+                pathIndex.onChange(path);
+            }
+        }
+        log.debug("Deleted {}: {}", relativePath, progress);
     }
 
     @Override
     public FileInfo moveFile(String sourcePath, String targetPath) throws IOException {
         Path source = resolvePath(sourcePath);
-        checkExists(sourcePath, source);
-        checkIsFile(sourcePath, source);
         Path target = resolvePath(targetPath);
 
-        Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
-        fileLocks.remove(source);
-        return createFileInfo(target);
+        try (PathLocks.Held lock = fileLocks.lock(source, LockMode.EXCLUSIVE, target, LockMode.EXCLUSIVE)) {
+            BasicFileAttributes attrs = checkIsFile(sourcePath, source);
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+            invalidateCaches(source);
+            invalidateCaches(target);
+            treeIndex.move(source, target);
+            pathIndex.onChange(source);
+            pathIndex.onChange(target);
+            return createFileInfo(target, attrs);
+        }
     }
 
     @Override
     public FileInfo moveDirectory(String sourcePath, String targetPath) throws IOException {
         Path source = resolvePath(sourcePath);
-        checkExists(sourcePath, source);
-        checkIsDirectory(sourcePath, source);
         Path target = resolvePath(targetPath);
 
-        FileUtils.moveDirectoryToDirectory(source.toFile(), target.toFile(), true);
-        return createFileInfo(target);
+        //source is moved into the target directory, other children of the target are not locked
+        Path moved = target.resolve(source.getFileName().toString());
+        try (PathLocks.Held lock = fileLocks.lock(source, LockMode.EXCLUSIVE, moved, LockMode.EXCLUSIVE)) {
+            checkIsDirectory(sourcePath, source);
+            FileUtils.moveDirectoryToDirectory(source.toFile(), target.toFile(), true);
+            invalidateCaches(source);
+            invalidateCaches(target);
+            treeIndex.move(source, moved);
+            pathIndex.onChange(source);
+            pathIndex.onChange(moved);
+            return createFileInfo(target, 0, true);
+        }
     }
 
     @Override
     public FileInfo copyFile(String sourcePath, String targetPath) throws IOException {
         Path source = resolvePath(sourcePath);
-        checkExists(sourcePath, source);
         Path target = resolvePath(targetPath);
 
-        Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
-        return createFileInfo(target);
+        try (PathLocks.Held lock = fileLocks.lock(source, LockMode.SHARED, target, LockMode.EXCLUSIVE)) {
+            BasicFileAttributes attrs = checkExists(sourcePath, source);
+            if (attrs.isRegularFile()) {
+                fileCopier.copy(source, target, false);
+            }
+            else {
+                Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            invalidateCaches(target);
+            treeIndex.refresh(target);
+            pathIndex.onChange(target);
+            return createFileInfo(target, attrs);
+        }
     }
 
     @Override
     public FileInfo copyDirectory(String sourcePath, String targetPath) throws IOException {
+        return copyDirectory(sourcePath, targetPath, new TreeProgress());
+    }
+
+    @Override
+    public FileInfo copyDirectory(String sourcePath, String targetPath, TreeProgress progress) throws IOException {
         Path source = resolvePath(sourcePath);
-        checkExists(sourcePath, source);
-        checkIsDirectory(sourcePath, source);
         Path target = resolvePath(targetPath);
 
-        FileUtils.copyDirectoryToDirectory(source.toFile(), target.toFile());
-        return createFileInfo(target);
+        Path copy = target.resolve(source.getFileName().toString());
+        try (PathLocks.Held lock = fileLocks.lock(source, LockMode.SHARED, copy, LockMode.EXCLUSIVE)) {
+            checkIsDirectory(sourcePath, source);
+            Files.createDirectories(target);
+            try {
+                treeOperations.copy(source, copy, progress);
+            } finally {
+                treeIndex.refresh(copy);
+                pathIndex.onChange(copy);
+            }
+        } finally {
+            invalidateCaches(target);
+        }
+        log.debug("Copied {} to {}: {}", sourcePath, targetPath, progress);
+        return createFileInfo(target, 0, true);
     }
 
     @Override
     public void appendToFile(String relativePath, String data) throws IOException {
         Path path = resolvePath(relativePath);
-        checkExists(relativePath, path);
-        checkIsFile(relativePath, path);
+        BasicFileAttributes attrs = fileAttributes(relativePath, path);
         if (data == null) {
             throw new IllegalArgumentException("Null param");
         }
@@ -150,40 +379,148 @@ public class FileServiceImpl implements FileService {
             throw new IllegalArgumentException("Invalid data");
         }
 
-        ReentrantLock lock = fileLocks.computeIfAbsent(path, k -> new ReentrantLock());
-        lock.lock();
-        try {
-            FileUtils.writeStringToFile(path.toFile(), data, StandardCharsets.UTF_8, true);
-        } finally {
-            lock.unlock();
+        append(path, attrs, ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Override
+    public void appendBytesToFile(String relativePath, byte[] data) throws IOException {
+        Path path = resolvePath(relativePath);
+        BasicFileAttributes attrs = fileAttributes(relativePath, path);
+        if (data == null) {
+            throw new IllegalArgumentException("Null param");
         }
+        if (data.length >= 10_000 || data.length == 0) {
+            throw new IllegalArgumentException("Invalid data");
+        }
+
+        append(path, attrs, ByteBuffer.wrap(data));
     }
 
     @Override
     public String readFromFile(String relativePath, int offset, int length) throws IOException {
+        return read(relativePath, offset, length, buffer ->
+                new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public byte[] readBytesFromFile(String relativePath, int offset, int length) throws IOException {
+        return read(relativePath, offset, length, buffer -> Arrays.copyOf(buffer.array(), buffer.position()));
+    }
+
+    @Override
+    public boolean awaitAppend(String relativePath, long offset, long timeoutMillis) throws IOException {
         Path path = resolvePath(relativePath);
-        checkExists(relativePath, path);
-        checkIsFile(relativePath, path);
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset");
+        }
+        if (timeoutMillis < 0 || timeoutMillis > limits.maxWaitMillis()) {
+            throw new IllegalArgumentException("Invalid timeout");
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try (FileWaiters.Waiter waiter = fileWaiters.register(path)) {
+            while (true) {
+                //armed before the check, so an append right after it is not missed
+                waiter.arm();
+                if (readableSize(relativePath, path) > offset) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !waiter.await(remaining)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    @Override
+    public byte[] readFollow(String relativePath, int offset, int length, long timeoutMillis) throws IOException {
+        if (length <= 0 || length > limits.maxReadLength()) {
+            throw new IllegalArgumentException("Invalid length");
+        }
+        awaitAppend(relativePath, offset, timeoutMillis);
+        return readBytesFromFile(relativePath, offset, length);
+    }
 
+    @Override
+    public long transferToFile(String relativePath, ReadableByteChannel source) throws IOException {
+        Path path = resolvePath(relativePath);
+        BasicFileAttributes attrs = fileAttributes(relativePath, path);
+
+        //whole stream is appended under the lock, so it is never interleaved with other appends
+        ByteBuffer buffer = transferBuffers.acquire();
+        long end = -1;
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.APPEND);
+             Lease<FileChannel> channel = channelCache.acquire(path, Mode.APPEND, attrs.fileKey())) {
+            long size = channel.get().size();
+            lock.commit(size);
+            long total = 0;
+            while (source.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                total += channel.get().write(buffer);
+                buffer.compact();
+                end = size + total;
+                lock.commit(end);
+                fileWaiters.changed(path);
+            }
+            return total;
+        } finally {
+            transferBuffers.release(buffer);
+            //cached blocks stay valid, appended bytes are after them
+            metadataCache.invalidateFile(path);
+            if (end >= 0) {
+                long now = System.currentTimeMillis();
+                treeIndex.appended(path, end, now);
+                pathIndex.appended(path, end, now);
+            }
+        }
+    }
+
+    @Override
+    public long transferFromFile(String relativePath, long offset, long length, WritableByteChannel target)
+            throws IOException {
         if (offset < 0) {
             throw new IllegalArgumentException("Invalid offset");
         }
-        if (length <= 0) {
+        if (length < 0) {
             throw new IllegalArgumentException("Invalid length");
         }
 
-        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "r")) {
-            file.seek(offset);
-            byte[] dataBytes = new byte[length];
-            int bytesRead = file.read(dataBytes, 0, length);
+        return transferFromFile(relativePath, size -> {
+            long end = Math.min(size, offset + Math.min(length, Long.MAX_VALUE - offset));
+            //nothing past the end of the file
+            return end > offset ? new Range(offset, end - offset) : null;
+        }, target);
+    }
 
-            if (bytesRead < 0) {
-                return new String(new byte[0], StandardCharsets.UTF_8); // EOF
+    @Override
+    public long transferFromFile(String relativePath, RangeSelector selector, WritableByteChannel target)
+            throws IOException {
+        Path path = resolvePath(relativePath);
+        BasicFileAttributes attrs = fileAttributes(relativePath, path);
+
+        //bytes go from page cache to the target channel, no heap copy of the content
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.SHARED);
+             Lease<FileChannel> channel = channelCache.acquire(path, Mode.READ, attrs.fileKey())) {
+            FileChannel fileChannel = channel.get();
+            long size = lock.readableSize(fileChannel.size());
+            Range range = selector.select(size);
+            if (range == null) {
+                return 0;
             }
-            if (bytesRead < length) {
-                length = bytesRead;
+            long end = range.offset() + range.length();
+            if (range.offset() < 0 || range.length() < 0 || end > size) {
+                throw new IllegalArgumentException("Invalid range");
             }
-            return new String(dataBytes, 0, length, StandardCharsets.UTF_8);
+            long position = range.offset();
+            while (position < end) {
+                long transferred = fileChannel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            return position - range.offset();
         }
     }
 
@@ -194,28 +531,143 @@ public class FileServiceImpl implements FileService {
 
     private void cleanup() {
         log.info("Cleaning up ...");
-        for (Path filePath : fileLocks.keySet()) {
-            ReentrantLock lock = fileLocks.get(filePath);
-            if (lock != null) {
-                lock.lock();
-                try {
-                    if (!Files.isRegularFile(filePath)) {// doesn't exist
-                        fileLocks.remove(filePath);
-                    }
-                } finally {
-                    lock.unlock();
+        appendBatcher.removeIdle();
+        channelCache.evictIdle();
+        mappedFiles.evictIdle();
+        try {
+            pathIndex.compactIfNeeded();
+        } catch (IOException e) {
+            log.warn("Failed to compact path index", e);
+        }
+    }
+
+    private void append(Path path, BasicFileAttributes attrs, ByteBuffer data) throws IOException {
+        long size = appendBatcher.append(path, attrs.fileKey(), data);
+        fileWaiters.changed(path);
+        metadataCache.invalidateFile(path);
+        //size after the batch is absolute, so appends finishing out of order are still counted right
+        long now = System.currentTimeMillis();
+        treeIndex.appended(path, size, now);
+        pathIndex.appended(path, size, now);
+    }
+
+    /**
+     * Read bytes of a file
+     *
+     * @param result converts filled (heap) buffer to the result, buffer is reused afterwards
+     */
+    private <T> T read(String relativePath, int offset, int length, Function<ByteBuffer, T> result)
+            throws IOException {
+        Path path = resolvePath(relativePath);
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.SHARED)) {
+            BasicFileAttributes attrs = fileAttributes(relativePath, path);
+
+            if (offset < 0) {
+                throw new IllegalArgumentException("Invalid offset");
+            }
+            if (length <= 0 || length > limits.maxReadLength()) {
+                throw new IllegalArgumentException("Invalid length");
+            }
+            long size = lock.readableSize(attrs.size());
+            int available = (int) Math.min(length, Math.max(size - offset, 0));
+            if (available == 0) {
+                return result.apply(ByteBuffer.allocate(0));
+            }
+            return read(path, attrs, offset, available, result);
+        }
+    }
+
+    /**
+     * Read bytes of a file which are known to exist
+     */
+    private <T> T read(Path path, BasicFileAttributes attrs, int offset, int available,
+                       Function<ByteBuffer, T> result) throws IOException {
+        //small reads use pooled buffers, larger ones allocate only what the file actually has
+        boolean pooled = available <= readBuffers.bufferSize();
+        ByteBuffer buffer = pooled ? readBuffers.acquire() : ByteBuffer.allocate(available);
+        buffer.limit(available);
+        try {
+            if (mappedFiles.accepts(attrs.size())) {
+                try (Lease<MappedFile> mapped = mappedFiles.acquire(path, attrs)) {
+                    mapped.get().read(offset, buffer);
+                }
+            }
+            else if (blockCache.isEnabled()) {
+                try (Lease<FileChannel> channel = channelCache.acquire(path, Mode.READ, attrs.fileKey())) {
+                    blockCache.read(path, attrs.fileKey(), offset, buffer,
+                            (position, target) -> channel.get().read(target, position));
+                }
+            }
+            else {
+                try (Lease<FileChannel> channel = channelCache.acquire(path, Mode.READ, attrs.fileKey())) {
+                    //positional read, channel is shared by concurrent readers
+                    int bytesRead;
+                    do {
+                        bytesRead = channel.get().read(buffer, (long) offset + buffer.position());
+                    } while (bytesRead > 0 && buffer.hasRemaining());
                 }
             }
+            return result.apply(buffer);
+        } finally {
+            if (pooled) {
+                readBuffers.release(buffer);
+            }
+        }
+    }
+
+    /**
+     * Glob without a separator matches names (like find -name), other globs match relative paths
+     */
+    private static PathMatcher globMatcher(String glob) {
+        if (glob == null || glob.isEmpty()) {
+            throw new IllegalArgumentException("Invalid glob");
         }
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        if (glob.contains("/")) {
+            return matcher;
+        }
+        return path -> matcher.matches(path.getFileName());
     }
 
-    private FileInfo createFileInfo(Path path) throws IOException {
-        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+    private static Pattern compilePattern(String pattern) {
+        if (pattern == null || pattern.isEmpty()) {
+            throw new IllegalArgumentException("Invalid pattern");
+        }
+        try {
+            return Pattern.compile(pattern);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid pattern");
+        }
+    }
+
+    private void invalidateCaches(Path path) {
+        channelCache.invalidate(path);
+        mappedFiles.invalidate(path);
+        blockCache.invalidate(path);
+        metadataCache.invalidate(path);
+        //followers find out the file is gone or replaced
+        fileWaiters.onChange(path);
+    }
+
+    private FileInfo createFileInfo(Path path, BasicFileAttributes attrs) {
+        return createFileInfo(path, attrs.isDirectory() ? 0 : attrs.size(), attrs.isDirectory());
+    }
+
+    private GrepMatch createGrepMatch(FileGrep.Match match) {
+        return GrepMatch.builder()
+                .path(rootPath.relativize(match.path()).toString())
+                .offset(match.offset())
+                .lineNumber(match.lineNumber())
+                .line(match.line())
+                .build();
+    }
+
+    private FileInfo createFileInfo(Path path, long size, boolean isDirectory) {
         return FileInfo.builder()
                 .name(path.getFileName().toString())
                 .path(rootPath.relativize(path).toString())
-                .size(attrs.isDirectory() ? 0 : attrs.size())
-                .isDirectory(attrs.isDirectory())
+                .size(size)
+                .isDirectory(isDirectory)
                 .build();
     }
 
@@ -236,22 +688,135 @@ public class FileServiceImpl implements FileService {
         return resolvedPath;
     }
 
-    private void checkExists(String relativePath, Path resolvedPath) throws NoSuchFileException {
-        if (!Files.exists(resolvedPath)) {
+    /**
+     * Size of a file a reader may see, without a torn append
+     */
+    private long readableSize(String relativePath, Path path) throws IOException {
+        try (PathLocks.Held lock = fileLocks.lock(path, LockMode.SHARED)) {
+            return lock.readableSize(fileAttributes(relativePath, path).size());
+        }
+    }
+
+    private BasicFileAttributes fileAttributes(String relativePath, Path resolvedPath) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(resolvedPath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            throw new NoSuchFileException(relativePath);
+        }
+        if (!attrs.isRegularFile()) {
+            throw new FileTypeException("Not a file: " + relativePath);
+        }
+        return attrs;
+    }
+
+    /**
+     * Position in a directory listing: number of entries already returned and name of the last one.
+     * Directory order is stable while the directory is not modified; if it is, the listing continues
+     * after the entry of that name, or at the same position if the entry is gone.
+     */
+    private record DirectoryCursor(long position, String name) {
+
+        private String encode() {
+            byte[] bytes = (position + ":" + name).getBytes(StandardCharsets.UTF_8);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        }
+
+        private static DirectoryCursor decode(String cursor) {
+            if (cursor == null || cursor.isEmpty()) {
+                return null;
+            }
+            try {
+                String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = decoded.indexOf(':');
+                long position = Long.parseLong(decoded.substring(0, separator));
+                if (position < 0) {
+                    throw new IllegalArgumentException("Negative position");
+                }
+                return new DirectoryCursor(position, decoded.substring(separator + 1));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+    }
+
+    /**
+     * Skip entries
+     *
+     * @return name of the last skipped entry
+     */
+    private String skip(Iterator<Path> iterator, long count) {
+        Path last = null;
+        for (long i = 0; i < count && iterator.hasNext(); i++) {
+            last = iterator.next();
+        }
+        return last == null ? null : last.getFileName().toString();
+    }
+
+    /**
+     * Find position after the last entry of the previous page
+     */
+    private long locate(Path dir, DirectoryCursor cursor) throws IOException {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            long position = 0;
+            for (Path child : children) {
+                position++;
+                if (child.getFileName().toString().equals(cursor.name())) {
+                    return position;
+                }
+            }
+        }
+        return cursor.position();
+    }
+
+    /**
+     * Info of directory entry, null if the entry disappeared meanwhile
+     */
+    private FileInfo childInfo(Path child) {
+        try {
+            return createFileInfo(child, cachedAttributes(child));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Attributes from metadata cache, read and cached if missing
+     */
+    private BasicFileAttributes cachedAttributes(Path path) throws IOException {
+        BasicFileAttributes attrs = metadataCache.get(path);
+        if (attrs == null) {
+            long stamp = metadataCache.stamp();
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            metadataCache.put(path, attrs, stamp);
+        }
+        return attrs;
+    }
+
+    private BasicFileAttributes checkExists(String relativePath, Path resolvedPath) throws IOException {
+        try {
+            return cachedAttributes(resolvedPath);
+        } catch (NoSuchFileException e) {
             throw new NoSuchFileException(relativePath);
         }
     }
 
-    private void checkIsFile(String relativePath, Path resolvedPath) throws IOException {
-        if (!Files.isRegularFile(resolvedPath)) {
-            throw new IOException("Not a file: " + relativePath);
+    private BasicFileAttributes checkIsFile(String relativePath, Path resolvedPath) throws IOException {
+        BasicFileAttributes attrs = checkExists(relativePath, resolvedPath);
+        if (!attrs.isRegularFile()) {
+            throw new FileTypeException("Not a file: " + relativePath);
         }
+        return attrs;
     }
 
-    private void checkIsDirectory(String relativePath, Path resolvedPath) throws IOException {
-        if (!Files.isDirectory(resolvedPath)) {
-            throw new IOException("Not a directory: " + relativePath);
+    private BasicFileAttributes checkIsDirectory(String relativePath, Path resolvedPath) throws IOException {
+        BasicFileAttributes attrs = checkExists(relativePath, resolvedPath);
+        if (!attrs.isDirectory()) {
+            throw new FileTypeException("Not a directory: " + relativePath);
         }
+        return attrs;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package com.id.fileserver.service;
+
+/**
+ * Limits of request parameters
+ *
+ * @param maxReadLength max length of data read by one request
+ * @param maxPageSize   max number of entries in a page of directory listing
+ * @param maxWaitMillis max time a request may wait for a file to grow
+ */
+public record FileServiceLimits(int maxReadLength, int maxPageSize, long maxWaitMillis) {
+}
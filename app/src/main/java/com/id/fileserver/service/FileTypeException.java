@@ -0,0 +1,14 @@
+package com.id.fileserver.service;
+
+import java.io.IOException;
+
+/**
+ * Path exists, but it is a directory where a file is expected or the other way round
+ */
+public class FileTypeException extends IOException {
+
+    public FileTypeException(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.id.fileserver.service;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Requests waiting for a file to change, e.g. followers of a growing file.
+ * <p>
+ * Waiters are woken directly by the service after an append (and by the watcher for changes made outside),
+ * so nobody has to poll. A waiter arms itself before it checks the file: a change after the check completes
+ * the armed future, a change before it is seen by the check.
+ * <p>
+ * Like {@link PathLocks}, an entry exists only while somebody waits on the path. Number of waiters is limited,
+ * every one holds a request thread.
+ */
+public class FileWaiters implements FileChangeListener {
+
+    private static class Entry {
+        private int waiters;
+        private CompletableFuture<Void> change = new CompletableFuture<>();
+    }
+
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+
+    public FileWaiters(int maxWaiters) {
+        this.permits = new Semaphore(maxWaiters);
+    }
+
+    /**
+     * Register a waiter on a path, it must be closed when done
+     *
+     * @param path resolved path
+     * @throws ServerBusyException if there are too many waiters
+     */
+    public Waiter register(Path path) {
+        if (!permits.tryAcquire()) {
+            throw new ServerBusyException("Too many waiters");
+        }
+        Entry entry = entries.compute(path, (key, existing) -> {
+            Entry result = existing != null ? existing : new Entry();
+            result.waiters++;
+            return result;
+        });
+        return new Waiter(path, entry);
+    }
+
+    /**
+     * Wake waiters of a path
+     *
+     * @param path resolved path
+     */
+    public void changed(Path path) {
+        Entry entry = entries.get(path);
+        if (entry != null) {
+            wake(entry);
+        }
+    }
+
+    @Override
+    public void onChange(Path path) {
+        //directory event may stand for changes of files under it
+        entries.forEach((waited, entry) -> {
+            if (waited.startsWith(path)) {
+                wake(entry);
+            }
+        });
+    }
+
+    @Override
+    public void onReset() {
+        entries.values().forEach(FileWaiters::wake);
+    }
+
+    /**
+     * @return number of paths waited on
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private static void wake(Entry entry) {
+        CompletableFuture<Void> change;
+        synchronized (entry) {
+            change = entry.change;
+            entry.change = new CompletableFuture<>();
+        }
+        change.complete(null);
+    }
+
+    /**
+     * Waiter on one path
+     */
+    public final class Waiter implements Closeable {
+        private final Path path;
+        private final Entry entry;
+        private CompletableFuture<Void> armed;
+        private boolean closed;
+
+        private Waiter(Path path, Entry entry) {
+            this.path = path;
+            this.entry = entry;
+        }
+
+        /**
+         * Start watching for the next change, called before the file is checked
+         */
+        public void arm() {
+            synchronized (entry) {
+                armed = entry.change;
+            }
+        }
+
+        /**
+         * Wait for a change since {@link #arm()}
+         *
+         * @return false if there was no change within the timeout
+         */
+        public boolean await(long timeoutNanos) throws InterruptedIOException {
+            try {
+                armed.get(timeoutNanos, TimeUnit.NANOSECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting");
+            } catch (ExecutionException e) {
+                //never completed exceptionally
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                entries.computeIfPresent(path, (key, existing) -> --existing.waiters > 0 ? existing : null);
+                permits.release();
+            }
+        }
+    }
+
+}
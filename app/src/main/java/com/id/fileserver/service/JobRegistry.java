@@ -0,0 +1,216 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.JobInfo;
+import com.id.fileserver.model.JobInfo.State;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Long-running operations executed in background.
+ * <p>
+ * Jobs run on a fixed number of threads, others wait in the queue. Finished jobs are kept for polling
+ * until the registry is full, then the oldest finished job is dropped. If all kept jobs are unfinished,
+ * new jobs are rejected.
+ */
+@Slf4j
+public class JobRegistry implements Closeable {
+
+    /**
+     * Operation executed by a job, reports its progress and checks cancellation through the progress
+     */
+    @FunctionalInterface
+    public interface Operation {
+
+        /**
+         * @return result, can be null
+         */
+        FileInfo run(TreeProgress progress) throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final int maxJobs;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    public JobRegistry(int threads, int maxJobs) {
+        this.executor = Executors.newFixedThreadPool(threads);
+        this.maxJobs = maxJobs;
+    }
+
+    /**
+     * Start operation in background
+     *
+     * @param name      operation name, for information only
+     * @param operation operation
+     * @return job id
+     * @throws ServerBusyException if there are too many unfinished jobs
+     */
+    public String submit(String name, Operation operation) {
+        lock.lock();
+        try {
+            if (jobs.size() >= maxJobs && !removeOldestFinished()) {
+                throw new ServerBusyException("Too many jobs");
+            }
+            Job job = new Job(UUID.randomUUID().toString(), name, operation);
+            jobs.put(job.id, job);
+            job.future = executor.submit(job::run);
+            return job.id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if job is unknown (or was already dropped)
+     */
+    public JobInfo get(String id) {
+        lock.lock();
+        try {
+            return find(id).toInfo();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Request cancellation. Queued job is cancelled immediately, running job stops as soon as possible
+     *
+     * @return job info, state is still running if job didn't stop yet
+     * @throws IllegalArgumentException if job is unknown (or was already dropped)
+     */
+    public JobInfo cancel(String id) {
+        lock.lock();
+        try {
+            Job job = find(id);
+            job.progress.cancel();
+            if (job.state == State.QUEUED && job.future.cancel(false)) {
+                job.state = State.CANCELLED;
+            }
+            return job.toInfo();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return jobs.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private Job find(String id) {
+        Job job = id == null ? null : jobs.get(id);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown job");
+        }
+        return job;
+    }
+
+    private boolean removeOldestFinished() {
+        Iterator<Job> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void update(Job job, State state, FileInfo result, Throwable error) {
+        lock.lock();
+        try {
+            job.state = state;
+            job.result = result;
+            job.error = error;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private class Job {
+        private final String id;
+        private final String name;
+        private final Operation operation;
+        private final TreeProgress progress = new TreeProgress();
+
+        //guarded by the registry lock
+        private Future<?> future;
+        private State state = State.QUEUED;
+        private FileInfo result;
+        private Throwable error;
+
+        private Job(String id, String name, Operation operation) {
+            this.id = id;
+            this.name = name;
+            this.operation = operation;
+        }
+
+        private void run() {
+            lock.lock();
+            try {
+                if (state != State.QUEUED) {
+                    return;
+                }
+                state = State.RUNNING;
+            } finally {
+                lock.unlock();
+            }
+            log.info("Job {} started: {}", id, name);
+            try {
+                FileInfo result = operation.run(progress);
+                update(this, State.SUCCEEDED, result, null);
+                log.info("Job {} succeeded: {}", id, progress);
+            } catch (CancellationException e) {
+                update(this, State.CANCELLED, null, null);
+                log.info("Job {} cancelled: {}", id, progress);
+            } catch (Exception e) {
+                update(this, State.FAILED, null, e);
+                log.warn("Job {} failed: {}", id, e.toString());
+            } catch (Error e) {
+                //job is finished whatever happened, the error goes on to the executor
+                update(this, State.FAILED, null, e);
+                log.error("Job {} failed: {}", id, name, e);
+                throw e;
+            }
+        }
+
+        private boolean isFinished() {
+            return state != State.QUEUED && state != State.RUNNING;
+        }
+
+        private JobInfo toInfo() {
+            return JobInfo.builder()
+                    .id(id)
+                    .operation(name)
+                    .state(state)
+                    .files(progress.files())
+                    .directories(progress.directories())
+                    .bytes(progress.bytes())
+                    .result(result)
+                    .errorType(error == null ? null : error.getClass().getSimpleName())
+                    .error(error == null ? null : error.getMessage())
+                    .build();
+        }
+    }
+
+}
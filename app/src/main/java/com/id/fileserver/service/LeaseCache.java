@@ -0,0 +1,232 @@
+package com.id.fileserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.function.IOFunction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Bounded LRU cache of open resources (channels, mappings, ...).
+ * <p>
+ * Resources are handed out as leases. Evicted or invalidated resource is closed only when its last lease
+ * is released, so a resource in use is never closed under its user.
+ * Every entry has a version (e.g. file key): an entry is reused only if the requested version is the same.
+ *
+ * @param <K> key
+ * @param <V> resource
+ */
+@Slf4j
+public class LeaseCache<K, V extends Closeable> implements Closeable {
+
+    private final int maxEntries;
+    private final long maxIdleNanos;
+    private final IOFunction<K, V> opener;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<K, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    public LeaseCache(int maxEntries, long maxIdleNanos, IOFunction<K, V> opener) {
+        this.maxEntries = maxEntries;
+        this.maxIdleNanos = maxIdleNanos;
+        this.opener = opener;
+    }
+
+    /**
+     * Get cached resource or open a new one.
+     *
+     * @param key     key
+     * @param version version of resource, cached resource of other version is replaced
+     * @return lease, must be closed after use
+     */
+    public Lease<V> acquire(K key, Object version) throws IOException {
+        List<Entry> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && Objects.equals(entry.version, version)) {
+                return entry.lease();
+            }
+            if (entry != null) {
+                entries.remove(key);
+                retire(entry, toClose);
+            }
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+
+        //resource is opened without holding the lock
+        Entry created = new Entry(key, opener.apply(key), version);
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && Objects.equals(entry.version, version)) {
+                //opened concurrently by other thread
+                toClose.add(created);
+                return entry.lease();
+            }
+            if (entry != null) {
+                entries.remove(key);
+                retire(entry, toClose);
+            }
+            entries.put(key, created);
+            Lease<V> lease = created.lease();
+            Iterator<Entry> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                Entry evicted = eldest.next();
+                eldest.remove();
+                retire(evicted, toClose);
+            }
+            return lease;
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * Drop entries matching the filter
+     */
+    public void invalidate(Predicate<K> filter) {
+        List<Entry> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Map.Entry<K, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<K, Entry> next = iterator.next();
+                if (filter.test(next.getKey())) {
+                    iterator.remove();
+                    retire(next.getValue(), toClose);
+                }
+            }
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    /**
+     * Drop entries not used longer than max idle time
+     */
+    public void evictIdle() {
+        long now = System.nanoTime();
+        List<Entry> toClose = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.refCount == 0 && now - entry.lastUsed > maxIdleNanos) {
+                    iterator.remove();
+                    retire(entry, toClose);
+                }
+            }
+        } finally {
+            lock.unlock();
+            closeAll(toClose);
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        invalidate(k -> true);
+    }
+
+    private void release(Entry entry) {
+        boolean close;
+        lock.lock();
+        try {
+            entry.refCount--;
+            entry.lastUsed = System.nanoTime();
+            close = entry.retired && entry.refCount == 0;
+        } finally {
+            lock.unlock();
+        }
+        if (close) {
+            closeAll(List.of(entry));
+        }
+    }
+
+    private void retire(Entry entry, List<Entry> toClose) {
+        entry.retired = true;
+        if (entry.refCount == 0) {
+            toClose.add(entry);
+        }
+    }
+
+    private void closeAll(List<Entry> toClose) {
+        for (Entry entry : toClose) {
+            try {
+                entry.value.close();
+            } catch (IOException e) {
+                log.warn("Failed to close: {}", entry.key, e);
+            }
+        }
+    }
+
+    /**
+     * Lease of a cached resource
+     */
+    public static final class Lease<V> implements AutoCloseable {
+
+        private final V value;
+        private Runnable onClose;
+
+        private Lease(V value, Runnable onClose) {
+            this.value = value;
+            this.onClose = onClose;
+        }
+
+        public V get() {
+            return value;
+        }
+
+        @Override
+        public void close() {
+            if (onClose != null) {
+                onClose.run();
+                onClose = null;
+            }
+        }
+    }
+
+    private class Entry {
+        private final K key;
+        private final V value;
+        private final Object version;
+        private int refCount;
+        private long lastUsed = System.nanoTime();
+        private boolean retired;
+
+        private Entry(K key, V value, Object version) {
+            this.key = key;
+            this.value = value;
+            this.version = version;
+        }
+
+        private Lease<V> lease() {
+            refCount++;
+            lastUsed = System.nanoTime();
+            return new Lease<>(value, () -> release(this));
+        }
+    }
+
+}
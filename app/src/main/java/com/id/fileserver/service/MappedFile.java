@@ -0,0 +1,129 @@
+package com.id.fileserver.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-only memory mapping of a file, mapped in segments of a fixed size
+ * (a single mapping is limited to 2 GB).
+ * <p>
+ * Mapping can be extended when the file grows: full segments are kept, only the last (partial) one is mapped again.
+ * <p>
+ * Reads are absolute, so a mapping can be shared by concurrent readers. Memory is unmapped when the segments
+ * are garbage collected, {@link #close()} only drops them.
+ */
+public class MappedFile implements Closeable {
+
+    private record Segments(MappedByteBuffer[] segments, long size) {
+    }
+
+    private static final Segments EMPTY = new Segments(new MappedByteBuffer[0], 0);
+
+    private final Path path;
+    private final int segmentSize;
+
+    private final ReentrantLock extendLock = new ReentrantLock();
+
+    private volatile Segments mapped = EMPTY;
+
+    private MappedFile(Path path, int segmentSize) {
+        this.path = path;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Map the file
+     *
+     * @param path        file path
+     * @param segmentSize max size of one mapping
+     */
+    public static MappedFile map(Path path, int segmentSize) throws IOException {
+        MappedFile file = new MappedFile(path, segmentSize);
+        file.extend(1);
+        return file;
+    }
+
+    public long size() {
+        return mapped.size();
+    }
+
+    /**
+     * Make sure the mapping covers the given size, the file is mapped up to its current size
+     */
+    public void extend(long size) throws IOException {
+        if (size <= mapped.size()) {
+            return;
+        }
+        //not synchronized: a virtual thread mapping the file would pin its carrier
+        extendLock.lock();
+        try {
+            remap(size);
+        } finally {
+            extendLock.unlock();
+        }
+    }
+
+    private void remap(long size) throws IOException {
+        Segments current = mapped;
+        if (size <= current.size()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            //mapping stays valid after the channel is closed
+            long newSize = channel.size();
+            if (newSize <= current.size()) {
+                return;
+            }
+            int full = (int) (current.size() / segmentSize);
+            int count = (int) ((newSize + segmentSize - 1) / segmentSize);
+            MappedByteBuffer[] segments = Arrays.copyOf(current.segments(), count);
+            for (int i = full; i < segments.length; i++) {
+                long position = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(segmentSize, newSize - position));
+            }
+            mapped = new Segments(segments, newSize);
+        }
+    }
+
+    /**
+     * Copy bytes of the file starting at position to the buffer
+     *
+     * @return number of bytes copied, -1 if position is at or past the end of mapping
+     */
+    public int read(long position, ByteBuffer target) {
+        Segments current = mapped;
+        if (position >= current.size()) {
+            return -1;
+        }
+        int total = 0;
+        while (target.hasRemaining() && position < current.size()) {
+            MappedByteBuffer segment = current.segments()[(int) (position / segmentSize)];
+            int index = (int) (position % segmentSize);
+            int length = Math.min(target.remaining(), segment.limit() - index);
+            target.put(target.position(), segment, index, length);
+            target.position(target.position() + length);
+            position += length;
+            total += length;
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        mapped = EMPTY;
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+
+}
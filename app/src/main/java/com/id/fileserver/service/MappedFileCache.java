@@ -0,0 +1,76 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.service.LeaseCache.Lease;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Cache of memory mapped files used for reads of large files.
+ * A mapping is validated against file key, so a replaced file is mapped again; mapping of an appended file
+ * is extended. Old mapping is dropped when the last reader releases it.
+ */
+public class MappedFileCache implements Closeable {
+
+    private final long minFileSize;
+    private final LeaseCache<Path, MappedFile> cache;
+
+    /**
+     * @param minFileSize  only files of at least this size are mapped
+     * @param maxFiles     max number of mapped files
+     * @param maxIdleNanos mapping not used longer than this is unmapped by {@link #evictIdle()}
+     * @param segmentSize  max size of one mapping, larger files are mapped in several segments
+     */
+    public MappedFileCache(long minFileSize, int maxFiles, long maxIdleNanos, int segmentSize) {
+        this.minFileSize = minFileSize;
+        this.cache = new LeaseCache<>(maxFiles, maxIdleNanos, path -> MappedFile.map(path, segmentSize));
+    }
+
+    /**
+     * Check whether reads of a file of the given size should be served from mapping
+     */
+    public boolean accepts(long fileSize) {
+        return fileSize >= minFileSize;
+    }
+
+    /**
+     * Get mapping of the file
+     *
+     * @param path  resolved path
+     * @param attrs current attributes of the file
+     * @return lease of mapping, must be closed after use
+     */
+    public Lease<MappedFile> acquire(Path path, BasicFileAttributes attrs) throws IOException {
+        Lease<MappedFile> lease = cache.acquire(path, attrs.fileKey());
+        try {
+            lease.get().extend(attrs.size());
+            return lease;
+        } catch (IOException | RuntimeException e) {
+            lease.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Drop mappings of the path and of all paths under it (path is a directory)
+     */
+    public void invalidate(Path path) {
+        cache.invalidate(key -> key.startsWith(path));
+    }
+
+    public void evictIdle() {
+        cache.evictIdle();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    @Override
+    public void close() {
+        cache.close();
+    }
+
+}
@@ -0,0 +1,148 @@
+package com.id.fileserver.service;
+
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Cache of file attributes.
+ * <p>
+ * Entries are invalidated by the service on its own changes and by the root directory watcher on changes made
+ * outside the service. Attributes are cached only if the parent directory is watched, otherwise an outside change
+ * would never invalidate them.
+ * <p>
+ * Attributes read before an invalidation are not cached: caller takes a {@link #stamp()} before reading them.
+ * <p>
+ * Entries are sorted by path, so a tree is a range of keys: a file change drops one entry, a directory change
+ * drops the range of its tree, nothing else is scanned.
+ */
+public class MetadataCache implements FileChangeListener {
+
+    private final int maxEntries;
+    private final Predicate<Path> watchedDir;
+
+    private final ConcurrentSkipListMap<String, BasicFileAttributes> entries = new ConcurrentSkipListMap<>();
+    //size of the skip list is not constant time
+    private final AtomicInteger count = new AtomicInteger();
+    private final AtomicLong stamp = new AtomicLong();
+
+    /**
+     * @param maxEntries max number of cached entries, 0 disables the cache
+     * @param watchedDir check whether changes in the directory are watched
+     */
+    public MetadataCache(int maxEntries, Predicate<Path> watchedDir) {
+        this.maxEntries = maxEntries;
+        this.watchedDir = watchedDir;
+    }
+
+    public BasicFileAttributes get(Path path) {
+        return entries.get(path.toString());
+    }
+
+    /**
+     * Current invalidation stamp, must be taken before the attributes are read
+     */
+    public long stamp() {
+        return stamp.get();
+    }
+
+    /**
+     * Cache attributes
+     *
+     * @param path  resolved path
+     * @param attrs attributes
+     * @param stamp stamp taken before the attributes were read
+     */
+    public void put(Path path, BasicFileAttributes attrs, long stamp) {
+        if (maxEntries <= 0 || !watchedDir.test(path.getParent())) {
+            return;
+        }
+        if (count.get() >= maxEntries) {
+            trim();
+        }
+        String key = path.toString();
+        if (entries.put(key, attrs) == null) {
+            count.incrementAndGet();
+        }
+        if (this.stamp.get() != stamp && entries.remove(key, attrs)) {
+            //invalidated meanwhile
+            count.decrementAndGet();
+        }
+    }
+
+    /**
+     * Drop entry of the file
+     */
+    public void invalidateFile(Path path) {
+        stamp.incrementAndGet();
+        remove(path.toString());
+    }
+
+    /**
+     * Drop entries of the path and of all paths under it (path is a directory)
+     */
+    public void invalidate(Path path) {
+        stamp.incrementAndGet();
+        String key = path.toString();
+        remove(key);
+        String prefix = key.endsWith(path.getFileSystem().getSeparator())
+                ? key : key + path.getFileSystem().getSeparator();
+        removeAll(entries.subMap(prefix, true, prefix + Character.MAX_VALUE, false));
+    }
+
+    public void clear() {
+        stamp.incrementAndGet();
+        removeAll(entries);
+    }
+
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public void onChange(Path path) {
+        BasicFileAttributes removed = remove(path.toString());
+        if (removed != null && removed.isRegularFile()) {
+            stamp.incrementAndGet();
+        }
+        else {
+            invalidate(path);
+        }
+    }
+
+    @Override
+    public void onReset() {
+        clear();
+    }
+
+    private BasicFileAttributes remove(String key) {
+        BasicFileAttributes removed = entries.remove(key);
+        if (removed != null) {
+            count.decrementAndGet();
+        }
+        return removed;
+    }
+
+    private void removeAll(NavigableMap<String, BasicFileAttributes> range) {
+        while (range.pollFirstEntry() != null) {
+            count.decrementAndGet();
+        }
+    }
+
+    private void trim() {
+        //drop arbitrary tenth of entries
+        for (int i = 0; i < Math.max(maxEntries / 10, 1); i++) {
+            Map.Entry<String, BasicFileAttributes> entry = entries.pollFirstEntry();
+            if (entry == null) {
+                break;
+            }
+            count.decrementAndGet();
+        }
+    }
+
+}
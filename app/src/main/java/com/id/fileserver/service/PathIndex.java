@@ -0,0 +1,820 @@
+package com.id.fileserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Persistent index of paths under the root directory with their metadata (directory flag, size, modification time).
+ * <p>
+ * Index is held in memory and persisted in its own directory as a snapshot (compacted state) and an append-only
+ * log of changes made since the snapshot. On start the snapshot is memory-mapped and read, then the log is replayed,
+ * so a restart doesn't scan the tree. Without a snapshot (first start) the tree is scanned in the background
+ * and the index is not ready until the scan is done.
+ * <p>
+ * Index is updated by the service on its own changes and by the root directory watcher on changes made outside
+ * of it. Changes made while the server was not running are found after the load by comparing modification times
+ * of the directories: only directories changed since they were indexed are listed again. The index is not ready
+ * until this is done. A file written in place (without being created, deleted or renamed) while the server was
+ * not running keeps its indexed size until it is changed again.
+ * Only creates, deletes and renames are logged right away. Size and time changes of existing paths (e.g. appends)
+ * are applied in memory and logged once per path by the periodic {@link #compactIfNeeded()}, which also flushes
+ * the log, or on close. Log is compacted into a new snapshot when it grows over the limit.
+ */
+@Slf4j
+public class PathIndex implements FileChangeListener, Closeable {
+
+    /**
+     * Indexed path
+     *
+     * @param path resolved path
+     */
+    public record Entry(Path path, boolean directory, long size, long lastModified) {
+    }
+
+    private record Meta(boolean directory, long size, long lastModified) {
+    }
+
+    private static final String SNAPSHOT = "snapshot";
+    private static final String LOG_PREFIX = "log.";
+    private static final int MAGIC = 0x50494458;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    //mapped window of the snapshot, records are read from it as a whole
+    private static final int MAP_WINDOW = 1 << 30;
+
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+
+    private final Path rootPath;
+    private final Path indexDir;
+    private final boolean enabled;
+    private final long maxLogSize;
+
+    //sorted by relative path ('/' separated), so a tree is a range of keys
+    private volatile ConcurrentSkipListMap<String, Meta> entries = new ConcurrentSkipListMap<>();
+    private volatile boolean ready;
+    //changed in memory, not logged yet
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+    //guarded by the lock: log of the current generation, changes seen during a scan
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ReentrantLock compactLock = new ReentrantLock();
+    private long generation;
+    private FileChannel logChannel;
+    private DataOutputStream logOut;
+    private List<Path> scanChanges;
+
+    /**
+     * @param rootPath   root directory
+     * @param indexDir   directory of index files, outside the root directory
+     * @param enabled    disabled index is never ready and ignores changes
+     * @param maxLogSize log is compacted when it grows over this size
+     */
+    public PathIndex(Path rootPath, Path indexDir, boolean enabled, long maxLogSize) {
+        this.rootPath = rootPath;
+        this.indexDir = indexDir;
+        this.enabled = enabled;
+        this.maxLogSize = maxLogSize;
+    }
+
+    /**
+     * Load index from the snapshot and the log and start verifying it, start scanning the tree if there is no snapshot
+     */
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (indexDir.startsWith(rootPath)) {
+            throw new IllegalArgumentException("Index directory is inside the root directory: " + indexDir);
+        }
+        Files.createDirectories(indexDir);
+
+        lock.lock();
+        try {
+            long started = System.nanoTime();
+            Path snapshot = indexDir.resolve(SNAPSHOT);
+            if (!Files.exists(snapshot)) {
+                //logs without a snapshot are from an unfinished scan
+                for (long logGeneration : logGenerations()) {
+                    Files.delete(logPath(logGeneration));
+                }
+                openLog(0);
+                scanInBackground();
+                return;
+            }
+
+            try {
+                generation = readSnapshot(snapshot);
+                long last = generation;
+                for (long logGeneration : logGenerations()) {
+                    if (logGeneration < generation) {
+                        Files.delete(logPath(logGeneration));
+                    }
+                    else {
+                        replay(logPath(logGeneration));
+                        last = logGeneration;
+                    }
+                }
+                openLog(last);
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to load path index, the tree is scanned again", e);
+                entries = new ConcurrentSkipListMap<>();
+                Files.delete(snapshot);
+                for (long logGeneration : logGenerations()) {
+                    Files.delete(logPath(logGeneration));
+                }
+                openLog(0);
+                scanInBackground();
+                return;
+            }
+            log.info("Path index loaded in {} ms: {} entries",
+                    (System.nanoTime() - started) / 1_000_000, entries.size());
+            verifyInBackground();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether the index has the whole tree and can be searched
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public long size() {
+        return entries.size();
+    }
+
+    /**
+     * Indexed entry of the path, null if it is not indexed
+     *
+     * @param path resolved path
+     */
+    public Entry get(Path path) {
+        Meta meta = entries.get(key(path));
+        return meta == null ? null : entry(key(path), meta);
+    }
+
+    /**
+     * Find indexed paths under a directory (not the directory itself), in path order
+     *
+     * @param dir      resolved path of directory
+     * @param matcher  matcher of paths relative to the directory
+     * @param maxDepth max depth below the directory (1 for its children only), 0 for no limit
+     */
+    public Stream<Entry> find(Path dir, PathMatcher matcher, int maxDepth) {
+        String prefix = dir.equals(rootPath) ? "" : key(dir) + "/";
+        int baseDepth = depth(prefix);
+        return tree(entries, prefix).entrySet().stream()
+                .filter(e -> maxDepth == 0 || depth(e.getKey()) - baseDepth < maxDepth)
+                .filter(e -> matcher.matches(Path.of(e.getKey().substring(prefix.length()))))
+                .map(e -> entry(e.getKey(), e.getValue()));
+    }
+
+    /**
+     * Path was changed (created, deleted, written, moved from or to), it is read again.
+     * Directory which was not indexed is read with its whole tree
+     *
+     * @param path resolved path
+     */
+    @Override
+    public void onChange(Path path) {
+        if (!enabled || !path.startsWith(rootPath) || path.equals(rootPath)) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (scanChanges != null) {
+                //applied after the scan
+                scanChanges.add(path);
+                return;
+            }
+            if (logOut == null) {
+                return;
+            }
+            apply(path);
+        } catch (IOException e) {
+            log.warn("Failed to update path index: {}", path, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * File was appended by the service. Its entry gets the known size and time without reading the file
+     * and without taking the lock; sizes only grow, so appends finishing out of order don't matter.
+     * File which is not indexed yet is read as a change
+     *
+     * @param path         resolved path of file
+     * @param size         size of the file after the append
+     * @param lastModified time of the append
+     */
+    public void appended(Path path, long size, long lastModified) {
+        if (!enabled) {
+            return;
+        }
+        String key = key(path);
+        Meta updated = ready ? entries.computeIfPresent(key, (k, meta) -> meta.directory() ? meta
+                : new Meta(false, Math.max(meta.size(), size), Math.max(meta.lastModified(), lastModified))) : null;
+        //not indexed, or the tree is being scanned (changes are collected then)
+        if (updated == null || updated.directory() || !ready) {
+            onChange(path);
+            return;
+        }
+        dirty.add(key);
+    }
+
+    /**
+     * Changes were lost, whole tree is scanned again
+     */
+    @Override
+    public void onReset() {
+        if (!enabled) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (scanChanges == null) {
+                scanInBackground();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Log the changed sizes and flush the log, compact it into a new snapshot if it has grown over the limit
+     */
+    public void compactIfNeeded() throws IOException {
+        long logSize;
+        lock.lock();
+        try {
+            if (logOut == null || scanChanges != null) {
+                return;
+            }
+            writeDirty();
+            logOut.flush();
+            logSize = logChannel.size();
+        } finally {
+            lock.unlock();
+        }
+        if (logSize > maxLogSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Write the current state as a new snapshot, the log is started again
+     */
+    public void compact() throws IOException {
+        compactLock.lock();
+        try {
+            writeSnapshot();
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        ConcurrentSkipListMap<String, Meta> state;
+        long snapshotGeneration;
+        lock.lock();
+        try {
+            if (scanChanges != null || logOut == null) {
+                return;
+            }
+            //changes from now on go to the new log, they may be in the snapshot as well (replay is idempotent)
+            writeDirty();
+            logOut.flush();
+            snapshotGeneration = generation + 1;
+            openLog(snapshotGeneration);
+            state = entries;
+        } finally {
+            lock.unlock();
+        }
+
+        long started = System.nanoTime();
+        Path tmp = indexDir.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshotGeneration);
+            for (Map.Entry<String, Meta> e : state.entrySet()) {
+                write(out, PUT, e.getKey(), e.getValue());
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, indexDir.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        for (long logGeneration : logGenerations()) {
+            if (logGeneration < snapshotGeneration) {
+                Files.deleteIfExists(logPath(logGeneration));
+            }
+        }
+        log.info("Path index compacted in {} ms: {} entries",
+                (System.nanoTime() - started) / 1_000_000, state.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (logOut != null) {
+                if (scanChanges == null) {
+                    writeDirty();
+                }
+                logOut.close();
+                logOut = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Read path and its tree (if not indexed) from disk, under the lock
+     */
+    private void apply(Path path) throws IOException {
+        String key = key(path);
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            if (entries.containsKey(key)) {
+                removeTree(key);
+                write(logOut, REMOVE, key, null);
+                parentChanged(path);
+            }
+            return;
+        }
+
+        Meta old = entries.get(key);
+        if (old != null && old.directory() && !attrs.isDirectory()) {
+            //directory replaced by a file
+            removeTree(key);
+            write(logOut, REMOVE, key, null);
+            old = null;
+        }
+        if (attrs.isDirectory() && (old == null || !old.directory())) {
+            scan(path, entries, logOut);
+            parentChanged(path);
+        }
+        else if (old == null) {
+            Meta meta = meta(attrs);
+            entries.put(key, meta);
+            write(logOut, PUT, key, meta);
+            parentChanged(path);
+        }
+        else {
+            //size or time changed, logged later once
+            entries.put(key, meta(attrs));
+            dirty.add(key);
+        }
+    }
+
+    /**
+     * Time of the parent directory changes with its children, it is compared on start
+     */
+    private void parentChanged(Path path) throws IOException {
+        Path parent = path.getParent();
+        String key = key(parent);
+        Meta meta = entries.get(key);
+        if (parent.equals(rootPath) || meta == null || !meta.directory()) {
+            return;
+        }
+        try {
+            entries.put(key, meta(Files.readAttributes(parent, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS)));
+            dirty.add(key);
+        } catch (NoSuchFileException e) {
+            //deleted as well, seen by its own change
+        }
+    }
+
+    /**
+     * Log current entries of the paths changed in memory, under the lock
+     */
+    private void writeDirty() throws IOException {
+        for (String key : dirty) {
+            dirty.remove(key);
+            Meta meta = entries.get(key);
+            if (meta != null) {
+                write(logOut, PUT, key, meta);
+            }
+        }
+    }
+
+    /**
+     * Put path with its tree into the entries, logged if the log is given
+     */
+    private void scan(Path start, NavigableMap<String, Meta> target, DataOutputStream out) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                put(dir, attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                put(file, attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                //deleted meanwhile or not readable, seen by the next change
+                return FileVisitResult.CONTINUE;
+            }
+
+            private void put(Path path, BasicFileAttributes attrs) throws IOException {
+                if (path.equals(rootPath)) {
+                    return;
+                }
+                String key = key(path);
+                Meta meta = meta(attrs);
+                target.put(key, meta);
+                if (out != null) {
+                    write(out, PUT, key, meta);
+                }
+            }
+        });
+    }
+
+    /**
+     * Scan the whole tree into new entries. Changes seen meanwhile are applied afterwards, the result is compacted
+     */
+    private void scanInBackground() {
+        ready = false;
+        scanChanges = new ArrayList<>();
+        Thread thread = new Thread(() -> {
+            try {
+                long started = System.nanoTime();
+                ConcurrentSkipListMap<String, Meta> scanned = new ConcurrentSkipListMap<>();
+                scan(rootPath, scanned, null);
+                lock.lock();
+                try {
+                    entries = scanned;
+                    for (Path path : scanChanges) {
+                        apply(path);
+                    }
+                    logOut.flush();
+                    scanChanges = null;
+                } finally {
+                    lock.unlock();
+                }
+                log.info("Path index scanned in {} ms: {} entries",
+                        (System.nanoTime() - started) / 1_000_000, scanned.size());
+                //ready once it is persisted, the scan is not repeated after a restart
+                compact();
+                ready = true;
+            } catch (IOException | RuntimeException e) {
+                //not ready, find walks the tree until the next reset
+                log.error("Failed to scan path index", e);
+                lock.lock();
+                try {
+                    scanChanges = null;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }, "path-index-scan");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Find changes made while the server was not running. Changes seen meanwhile are applied afterwards,
+     * the result is compacted if anything has changed. Tree is scanned again if this fails
+     */
+    private void verifyInBackground() {
+        ready = false;
+        scanChanges = new ArrayList<>();
+        Thread thread = new Thread(() -> {
+            try {
+                long started = System.nanoTime();
+                int changed = verify();
+                lock.lock();
+                try {
+                    for (Path path : scanChanges) {
+                        apply(path);
+                    }
+                    logOut.flush();
+                    scanChanges = null;
+                } finally {
+                    lock.unlock();
+                }
+                log.info("Path index verified in {} ms: {} entries changed",
+                        (System.nanoTime() - started) / 1_000_000, changed);
+                if (changed > 0) {
+                    compact();
+                }
+                ready = true;
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed to verify path index, the tree is scanned again", e);
+                lock.lock();
+                try {
+                    scanInBackground();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }, "path-index-verify");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Check indexed directories, parents before children, list again those with a different modification time.
+     * Entries are not read by anybody until the index is ready
+     *
+     * @return number of changed entries
+     */
+    private int verify() throws IOException {
+        int changed = relist(rootPath, "");
+        List<String> directories = entries.entrySet().stream()
+                .filter(e -> e.getValue().directory())
+                .map(Map.Entry::getKey)
+                .toList();
+        for (String key : directories) {
+            Meta meta = entries.get(key);
+            if (meta == null || !meta.directory()) {
+                //removed with its changed parent
+                continue;
+            }
+            Path dir = rootPath.resolve(key);
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(dir, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                removeTree(key);
+                changed++;
+                continue;
+            }
+            if (!attrs.isDirectory()) {
+                removeTree(key);
+                entries.put(key, meta(attrs));
+                changed++;
+            }
+            else if (attrs.lastModifiedTime().toMillis() != meta.lastModified()) {
+                changed += relist(dir, key + "/");
+                entries.put(key, meta(attrs));
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Compare children of the directory with the indexed ones. Indexed subdirectories are left to be verified
+     * by themselves, new ones are scanned
+     *
+     * @return number of changed entries
+     */
+    private int relist(Path dir, String prefix) throws IOException {
+        List<String> indexed = tree(entries, prefix).keySet().stream()
+                .filter(key -> key.indexOf('/', prefix.length()) < 0)
+                .toList();
+        List<Path> children;
+        try (Stream<Path> list = Files.list(dir)) {
+            children = list.toList();
+        }
+
+        int changed = 0;
+        for (String key : indexed) {
+            if (!Files.exists(rootPath.resolve(key), LinkOption.NOFOLLOW_LINKS)) {
+                removeTree(key);
+                changed++;
+            }
+        }
+        for (Path child : children) {
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            String key = key(child);
+            Meta old = entries.get(key);
+            if (old != null && old.directory() == attrs.isDirectory()) {
+                if (!attrs.isDirectory() && !old.equals(meta(attrs))) {
+                    entries.put(key, meta(attrs));
+                    changed++;
+                }
+                continue;
+            }
+            if (old != null) {
+                removeTree(key);
+            }
+            if (attrs.isDirectory()) {
+                scan(child, entries, null);
+            }
+            else {
+                entries.put(key, meta(attrs));
+            }
+            changed++;
+        }
+        return changed;
+    }
+
+    /**
+     * @return generation of the snapshot
+     */
+    private long readSnapshot(Path snapshot) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Invalid path index snapshot: " + snapshot);
+            }
+            long snapshotGeneration = header.getLong();
+
+            long position = HEADER_SIZE;
+            while (position < size) {
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAP_WINDOW, size - position));
+                int read = readRecords(window);
+                if (read == 0) {
+                    throw new IOException("Invalid path index snapshot record at: " + position);
+                }
+                position += read;
+            }
+            return snapshotGeneration;
+        }
+    }
+
+    /**
+     * Apply complete records of the buffer
+     *
+     * @return number of bytes read
+     */
+    private int readRecords(ByteBuffer buffer) {
+        int start = buffer.position();
+        while (buffer.remaining() >= 4) {
+            int length = buffer.getInt(buffer.position());
+            if (buffer.remaining() < 4 + length) {
+                break;
+            }
+            buffer.getInt();
+            byte op = buffer.get();
+            boolean directory = buffer.get() != 0;
+            long size = buffer.getLong();
+            long lastModified = buffer.getLong();
+            byte[] key = new byte[length - 18];
+            buffer.get(key);
+            apply(op, new String(key, StandardCharsets.UTF_8), new Meta(directory, size, lastModified));
+        }
+        return buffer.position() - start;
+    }
+
+    /**
+     * Replay log, incomplete record at the end (e.g. after a crash) is cut off
+     */
+    private void replay(Path logPath) throws IOException {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath), 1 << 16))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                try {
+                    in.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                byte op = buffer.get();
+                boolean directory = buffer.get() != 0;
+                long size = buffer.getLong();
+                long lastModified = buffer.getLong();
+                String key = new String(record, 18, length - 18, StandardCharsets.UTF_8);
+                apply(op, key, new Meta(directory, size, lastModified));
+                valid += 4 + length;
+            }
+        }
+        if (valid < Files.size(logPath)) {
+            log.warn("Incomplete path index log cut off at {}: {}", valid, logPath);
+            try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    private void apply(byte op, String key, Meta meta) {
+        if (op == PUT) {
+            entries.put(key, meta);
+        }
+        else {
+            removeTree(key);
+        }
+    }
+
+    private void removeTree(String key) {
+        entries.remove(key);
+        tree(entries, key + "/").clear();
+    }
+
+    private void openLog(long logGeneration) throws IOException {
+        if (logOut != null) {
+            logOut.close();
+        }
+        generation = logGeneration;
+        logChannel = FileChannel.open(logPath(logGeneration), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        logOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(logChannel), 1 << 16));
+    }
+
+    private List<Long> logGenerations() throws IOException {
+        try (Stream<Path> files = Files.list(indexDir)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(LOG_PREFIX))
+                    .map(name -> Long.parseLong(name.substring(LOG_PREFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private Path logPath(long logGeneration) {
+        return indexDir.resolve(LOG_PREFIX + logGeneration);
+    }
+
+    private String key(Path path) {
+        return rootPath.relativize(path).toString();
+    }
+
+    private Entry entry(String key, Meta meta) {
+        return new Entry(rootPath.resolve(key), meta.directory(), meta.size(), meta.lastModified());
+    }
+
+    private static NavigableMap<String, Meta> tree(NavigableMap<String, Meta> map, String prefix) {
+        return prefix.isEmpty() ? map : map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private static int depth(String key) {
+        int depth = 0;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) == '/') {
+                depth++;
+            }
+        }
+        return depth;
+    }
+
+    private static Meta meta(BasicFileAttributes attrs) {
+        return new Meta(attrs.isDirectory(), attrs.isDirectory() ? 0 : attrs.size(),
+                attrs.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Record: length of the rest, op, directory flag, size, modification time, path
+     */
+    private static void write(DataOutputStream out, byte op, String key, Meta meta) throws IOException {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(18 + bytes.length);
+        out.writeByte(op);
+        out.writeByte(meta != null && meta.directory() ? 1 : 0);
+        out.writeLong(meta != null ? meta.size() : 0);
+        out.writeLong(meta != null ? meta.lastModified() : 0);
+        out.write(bytes);
+    }
+
+}
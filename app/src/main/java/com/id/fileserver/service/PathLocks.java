@@ -0,0 +1,307 @@
+package com.id.fileserver.service;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hierarchical (multi-granularity) locks of files and directories.
+ * <p>
+ * Locking a path in some mode locks all its ancestors (up to the root) in the matching intention mode,
+ * so a directory locked as a whole excludes operations on anything under it, while operations on unrelated subtrees
+ * only share intention locks of common ancestors and proceed in parallel.
+ * All locks of one call are acquired in path order (ancestors first), which rules out deadlocks.
+ * <p>
+ * Readers share the lock with each other and with one appender, so reads never wait for appends.
+ * Exclusive holders (move, delete, replace) wait for all of them.
+ * To keep readers from seeing a torn append, the appender publishes the committed size of the file
+ * (see {@link Held#commit(long)}) before it writes and readers don't read beyond it.
+ * <p>
+ * A lock exists only while some thread holds it or waits for it: entries are reference counted
+ * and removed when the last holder releases, so the table doesn't grow with the number of files ever locked.
+ */
+public class PathLocks {
+
+    public enum LockMode {
+        /**
+         * Taken on ancestors of a path locked in {@link #SHARED}
+         */
+        INTENT_SHARED,
+        /**
+         * Taken on ancestors of a path locked in {@link #APPEND} or {@link #EXCLUSIVE}
+         */
+        INTENT_EXCLUSIVE,
+        /**
+         * Read of a file or of a whole directory tree, shared with other readers and the appender
+         */
+        SHARED,
+        /**
+         * Append, shared with readers, exclusive with other appenders
+         */
+        APPEND,
+        /**
+         * Change of the whole file or directory tree (move, delete, replace), exclusive with all other modes
+         */
+        EXCLUSIVE;
+
+        private boolean isCompatible(LockMode other) {
+            return switch (this) {
+                case INTENT_SHARED -> other != EXCLUSIVE;
+                case INTENT_EXCLUSIVE -> other == INTENT_SHARED || other == INTENT_EXCLUSIVE || other == APPEND;
+                case SHARED -> other == INTENT_SHARED || other == SHARED || other == APPEND;
+                case APPEND -> other != APPEND && other != EXCLUSIVE;
+                case EXCLUSIVE -> false;
+            };
+        }
+
+        private LockMode intention() {
+            return this == SHARED || this == INTENT_SHARED ? INTENT_SHARED : INTENT_EXCLUSIVE;
+        }
+
+        /**
+         * Mode covering both modes, e.g. a directory which is read and has a child changed is locked exclusively
+         */
+        private LockMode join(LockMode other) {
+            if (this == other || other == INTENT_SHARED) {
+                return this;
+            }
+            return this == INTENT_SHARED ? other : EXCLUSIVE;
+        }
+    }
+
+    private static final LockMode[] MODES = LockMode.values();
+
+    private final Path root;
+    private final ConcurrentMap<Path, Entry> locks = new ConcurrentHashMap<>();
+
+    /**
+     * Locks without a common root, every ancestor of a path is locked
+     */
+    public PathLocks() {
+        this(null);
+    }
+
+    /**
+     * @param root top directory, ancestors above it are not locked
+     */
+    public PathLocks(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * Lock the path, waiting if it (or its ancestor or descendant) is locked by other thread in a conflicting mode
+     *
+     * @param path resolved path
+     * @param mode lock mode
+     * @return held lock, must be closed to release it
+     */
+    public Held lock(Path path, LockMode mode) {
+        Map<Path, LockMode> plan = new TreeMap<>();
+        addToPlan(plan, path, mode);
+        return acquire(plan, path);
+    }
+
+    /**
+     * Lock two paths. If they overlap (are the same or one contains the other),
+     * common paths are locked once in the mode covering both.
+     *
+     * @return held locks, must be closed to release both
+     */
+    public Held lock(Path path1, LockMode mode1, Path path2, LockMode mode2) {
+        Map<Path, LockMode> plan = new TreeMap<>();
+        addToPlan(plan, path1, mode1);
+        addToPlan(plan, path2, mode2);
+        return acquire(plan, path1);
+    }
+
+    /**
+     * @return number of paths which are locked or waited for
+     */
+    public int size() {
+        return locks.size();
+    }
+
+    private void addToPlan(Map<Path, LockMode> plan, Path path, LockMode mode) {
+        plan.merge(path, mode, LockMode::join);
+        if (root != null && !path.startsWith(root)) {
+            return;
+        }
+        LockMode intention = mode.intention();
+        for (Path parent = path.getParent(); parent != null; parent = parent.getParent()) {
+            plan.merge(parent, intention, LockMode::join);
+            if (parent.equals(root)) {
+                break;
+            }
+        }
+    }
+
+    private Held acquire(Map<Path, LockMode> plan, Path target) {
+        //path order puts ancestors first, every thread locks in the same order
+        List<Lock> acquired = new ArrayList<>(plan.size());
+        Lock targetLock = null;
+        try {
+            for (Map.Entry<Path, LockMode> next : plan.entrySet()) {
+                Lock lock = acquire(next.getKey(), next.getValue());
+                acquired.add(lock);
+                if (next.getKey().equals(target)) {
+                    targetLock = lock;
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            releaseAll(acquired);
+            throw e;
+        }
+        return new Held(acquired, targetLock);
+    }
+
+    private Lock acquire(Path path, LockMode mode) {
+        //counted atomically with the lookup, so an entry is never removed while someone is about to use it
+        Entry entry = locks.compute(path, (k, existing) -> {
+            Entry result = existing != null ? existing : new Entry();
+            result.references++;
+            return result;
+        });
+        try {
+            entry.acquire(mode);
+        } catch (RuntimeException | Error e) {
+            release(path, entry);
+            throw e;
+        }
+        return new Lock(path, entry, mode);
+    }
+
+    private void releaseAll(List<Lock> acquired) {
+        for (int i = acquired.size() - 1; i >= 0; i--) {
+            Lock lock = acquired.get(i);
+            lock.entry.release(lock.mode);
+            release(lock.path, lock.entry);
+        }
+    }
+
+    private void release(Path path, Entry entry) {
+        locks.computeIfPresent(path, (k, existing) -> --existing.references == 0 ? null : existing);
+    }
+
+    private record Lock(Path path, Entry entry, LockMode mode) {
+    }
+
+    private static final class Entry {
+        private final ReentrantLock mutex = new ReentrantLock();
+        private final Condition released = mutex.newCondition();
+        //guarded by the mutex
+        private final int[] holders = new int[MODES.length];
+        private int exclusiveWaiters;
+        private Thread exclusiveOwner;
+        //guarded by the map (changed only in compute of the key)
+        private int references;
+        //size readers may see, -1 if there was no append since the entry exists
+        private volatile long committedSize = -1;
+
+        private void acquire(LockMode mode) {
+            mutex.lock();
+            try {
+                if (exclusiveOwner == Thread.currentThread()) {
+                    //reentrant, owner of the exclusive lock already excludes everybody else
+                    holders[mode.ordinal()]++;
+                    return;
+                }
+                boolean exclusive = mode == LockMode.EXCLUSIVE;
+                if (exclusive) {
+                    exclusiveWaiters++;
+                }
+                try {
+                    //waiting exclusive lock is not overtaken by new shared holders, so it never starves
+                    while (!isGranted(mode) || (!exclusive && exclusiveWaiters > 0)) {
+                        released.awaitUninterruptibly();
+                    }
+                } finally {
+                    if (exclusive) {
+                        exclusiveWaiters--;
+                    }
+                }
+                holders[mode.ordinal()]++;
+                if (exclusive) {
+                    exclusiveOwner = Thread.currentThread();
+                }
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        private void release(LockMode mode) {
+            mutex.lock();
+            try {
+                holders[mode.ordinal()]--;
+                if (mode == LockMode.EXCLUSIVE && holders[mode.ordinal()] == 0) {
+                    exclusiveOwner = null;
+                    //file may have been replaced, appended size is not known anymore
+                    committedSize = -1;
+                }
+                released.signalAll();
+            } finally {
+                mutex.unlock();
+            }
+        }
+
+        private boolean isGranted(LockMode mode) {
+            for (LockMode held : MODES) {
+                if (holders[held.ordinal()] > 0 && !mode.isCompatible(held)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Locks held by the current thread
+     */
+    public final class Held implements AutoCloseable {
+        private final List<Lock> locks;
+        private final Lock target;
+        private boolean released;
+
+        private Held(List<Lock> locks, Lock target) {
+            this.locks = locks;
+            this.target = target;
+        }
+
+        /**
+         * Publish the size of the file which is completely written. Called by the appender (in {@link LockMode#APPEND})
+         * before it starts writing and after every write.
+         */
+        public void commit(long size) {
+            if (target.mode() != LockMode.APPEND) {
+                throw new IllegalStateException("Not an append lock");
+            }
+            target.entry().committedSize = size;
+        }
+
+        /**
+         * Size of the file a reader may see
+         *
+         * @param size current size of the file, read after the lock was acquired
+         * @return the size, or less if an append is in progress
+         */
+        public long readableSize(long size) {
+            //appender commits before writing: if nothing is committed after the size was read, the size is not torn
+            long committed = target.entry().committedSize;
+            return committed >= 0 ? Math.min(size, committed) : size;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                releaseAll(locks);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.id.fileserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Watches the whole tree of the root directory and notifies listeners about changes.
+ * <p>
+ * Directories are watched one by one (that's how the OS watch works), new directories are registered as they appear.
+ * A directory which could not be registered (e.g. watch limit reached) is not watched, see {@link #isWatched(Path)}.
+ */
+@Slf4j
+public class RootDirWatcher implements Closeable {
+
+    private final Path rootPath;
+    private final boolean enabled;
+
+    private final Map<WatchKey, Path> keys = new ConcurrentHashMap<>();
+    private final Map<Path, WatchKey> watchedDirs = new ConcurrentHashMap<>();
+    private final List<FileChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public RootDirWatcher(Path rootPath, boolean enabled) {
+        this.rootPath = rootPath;
+        this.enabled = enabled;
+    }
+
+    public void addListener(FileChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check whether changes directly in the directory are reported
+     */
+    public boolean isWatched(Path dir) {
+        return dir != null && watchedDirs.containsKey(dir);
+    }
+
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        registerTree(rootPath);
+        thread = new Thread(this::run, "root-dir-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        log.info("Watching {} directories", watchedDirs.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = keys.get(key);
+            if (dir != null) {
+                processEvents(dir, key);
+            }
+            if (!key.reset()) {
+                //directory deleted or moved away
+                keys.remove(key);
+                if (dir != null) {
+                    watchedDirs.remove(dir, key);
+                    notifyChange(dir);
+                }
+            }
+        }
+    }
+
+    private void processEvents(Path dir, WatchKey key) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                log.warn("Changes lost in: {}", dir);
+                listeners.forEach(FileChangeListener::onReset);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    registerTree(path);
+                } catch (IOException e) {
+                    log.warn("Failed to watch: {}", path, e);
+                }
+            }
+            notifyChange(path);
+        }
+    }
+
+    private void notifyChange(Path path) {
+        for (FileChangeListener listener : listeners) {
+            listener.onChange(path);
+        }
+    }
+
+    private void registerTree(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                try {
+                    WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                    keys.put(key, dir);
+                    watchedDirs.put(dir, key);
+                    return FileVisitResult.CONTINUE;
+                } catch (IOException e) {
+                    log.warn("Failed to watch: {}", dir, e);
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                //deleted meanwhile
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,13 @@
+package com.id.fileserver.service;
+
+/**
+ * Request can't be served now because a limit of concurrent work is reached (searches, waiters, jobs),
+ * it may be retried later
+ */
+public class ServerBusyException extends RuntimeException {
+
+    public ServerBusyException(String message) {
+        super(message);
+    }
+
+}
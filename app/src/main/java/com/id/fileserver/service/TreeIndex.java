@@ -0,0 +1,604 @@
+package com.id.fileserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory index of directory trees: total size, number of files and directories and the newest modification time
+ * of every indexed directory.
+ * <p>
+ * A tree is read from disk when its summary is requested for the first time. From then on it is kept up to date
+ * by the service on its own changes and by the root directory watcher on changes made outside of it
+ * (without the watcher, outside changes are not seen). Every change updates the totals of the changed entry's
+ * ancestors only, so summaries of indexed directories are answered without touching the disk.
+ * <p>
+ * Updates are absolute (the changed path is read again, an append brings the file size), so they may be repeated
+ * or come late without harm.
+ * When in doubt (e.g. tree changed outside while being read), the affected tree is dropped and read again on demand.
+ * Number of indexed entries is limited; a tree which doesn't fit is summarized by walking it, but not kept.
+ */
+@Slf4j
+public class TreeIndex implements FileChangeListener {
+
+    /**
+     * Totals of a tree, the directory itself is not counted in directories
+     */
+    public record Totals(long size, long files, long directories, long lastModified) {
+    }
+
+    private final long maxEntries;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    //guarded by the lock: indexed trees (disjoint), number of their entries, count of outside changes
+    private final Map<Path, Node> roots = new HashMap<>();
+    private long entries;
+    private long stamp;
+
+    /**
+     * @param maxEntries max number of indexed files and directories, 0 disables the index
+     */
+    public TreeIndex(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Totals of a directory tree. Caller makes sure the tree is not changed by the service meanwhile.
+     *
+     * @param dir resolved path of existing directory
+     */
+    public Totals summary(Path dir) throws IOException {
+        long startStamp;
+        lock.lock();
+        try {
+            Node node = find(dir);
+            if (node != null) {
+                return node.totals();
+            }
+            startStamp = stamp;
+        } finally {
+            lock.unlock();
+        }
+
+        Node loaded = load(dir);
+        lock.lock();
+        try {
+            //not kept if it is already indexed or was changed while being read
+            if (stamp == startStamp && rootOf(dir) == null) {
+                install(dir, loaded);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return loaded.totals();
+    }
+
+    /**
+     * Path was created or changed (e.g. appended, copied to), read it again if it is in an indexed tree.
+     * Path which doesn't exist anymore is removed.
+     *
+     * @param path resolved path
+     */
+    public void refresh(Path path) {
+        Path top;
+        long startStamp;
+        lock.lock();
+        try {
+            Node root = rootOf(path);
+            if (root == null) {
+                return;
+            }
+            //missing parent directories (e.g. created with the path) are read as a whole
+            top = topMissing(path);
+            if (top == null) {
+                top = path;
+            }
+            Node node = find(top);
+            if (node != null && !node.isDirectory() || node == null && Files.isRegularFile(top, LinkOption.NOFOLLOW_LINKS)) {
+                //one file is read under the lock, so concurrent refreshes of it are applied in order
+                attach(top, load(top));
+                return;
+            }
+            startStamp = stamp;
+        } catch (NoSuchFileException e) {
+            remove(path);
+            return;
+        } catch (IOException e) {
+            dropRootOf(path, e);
+            return;
+        } finally {
+            lock.unlock();
+        }
+
+        //directory is read without the lock
+        try {
+            Node loaded = load(top);
+            lock.lock();
+            try {
+                if (stamp != startStamp) {
+                    dropRootOf(top, null);
+                }
+                else if (rootOf(top) != null) {
+                    attach(top, loaded);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } catch (NoSuchFileException e) {
+            remove(top);
+        } catch (IOException e) {
+            dropRootOf(top, e);
+        }
+    }
+
+    /**
+     * File was appended by the service. Its node gets the known size and time without reading the file;
+     * sizes only grow, so appends finishing out of order don't matter. File which is not indexed yet is refreshed
+     *
+     * @param path         resolved path of file
+     * @param size         size of the file after the append
+     * @param lastModified time of the append
+     */
+    public void appended(Path path, long size, long lastModified) {
+        lock.lock();
+        try {
+            if (rootOf(path) == null) {
+                return;
+            }
+            Node node = find(path);
+            if (node != null && !node.isDirectory()) {
+                if (size > node.size) {
+                    node.changed(size - node.size, 0, 0);
+                }
+                node.setModified(Math.max(node.modified, lastModified));
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        refresh(path);
+    }
+
+    /**
+     * Path was deleted
+     *
+     * @param path resolved path
+     */
+    public void remove(Path path) {
+        lock.lock();
+        try {
+            Node root = roots.remove(path);
+            if (root != null) {
+                entries -= root.entries();
+                return;
+            }
+            Node node = find(path);
+            if (node != null) {
+                Node parent = node.parent;
+                detach(node);
+                touch(parent, path.getParent());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Path was moved (renamed). The indexed tree is moved as it is, nothing is read again
+     *
+     * @param source resolved source path
+     * @param target resolved target path, replaced if it existed
+     */
+    public void move(Path source, Path target) {
+        lock.lock();
+        try {
+            Node node = roots.remove(source);
+            if (node != null) {
+                entries -= node.entries();
+            }
+            else {
+                node = find(source);
+                if (node != null) {
+                    Node parent = node.parent;
+                    detach(node);
+                    touch(parent, source.getParent());
+                }
+            }
+            if (node == null) {
+                //source was not indexed
+                if (rootOf(target) == null) {
+                    return;
+                }
+            }
+            else {
+                node.name = target.getFileName().toString();
+                if (node.isDirectory()) {
+                    //moved directory may get a new time as well (its parent entry is rewritten)
+                    touch(node, target);
+                }
+                if (rootOf(target) == null) {
+                    //moved out of indexed trees, keep it as a tree of its own
+                    install(target, node);
+                    return;
+                }
+                Node parent = find(target.getParent());
+                if (parent != null) {
+                    attachTo(parent, node);
+                    touch(parent, target.getParent());
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        refresh(target);
+    }
+
+    /**
+     * @return number of indexed files and directories
+     */
+    public long size() {
+        lock.lock();
+        try {
+            return entries;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onChange(Path path) {
+        lock.lock();
+        try {
+            stamp++;
+            Node node = find(path);
+            if (node != null && node.isDirectory() && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                //changes of the content are reported separately, only own time is updated
+                node.setModified(Files.getLastModifiedTime(path, LinkOption.NOFOLLOW_LINKS).toMillis());
+                return;
+            }
+        } catch (IOException e) {
+            //deleted meanwhile, refreshed below
+        } finally {
+            lock.unlock();
+        }
+        refresh(path);
+    }
+
+    @Override
+    public void onReset() {
+        lock.lock();
+        try {
+            stamp++;
+            roots.clear();
+            entries = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Node load(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isDirectory()) {
+            return Node.file(String.valueOf(path.getFileName()), attrs);
+        }
+
+        Deque<Node> stack = new ArrayDeque<>();
+        Node[] result = new Node[1];
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes dirAttrs) {
+                stack.push(Node.directory(name(dir), dirAttrs));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes fileAttrs) {
+                stack.peek().add(Node.file(name(file), fileAttrs));
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                if (e instanceof NoSuchFileException && !file.equals(path)) {
+                    //deleted meanwhile
+                    return FileVisitResult.CONTINUE;
+                }
+                throw e;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Node done = stack.pop();
+                if (stack.isEmpty()) {
+                    result[0] = done;
+                }
+                else {
+                    stack.peek().add(done);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            private String name(Path p) {
+                return String.valueOf(p.getFileName());
+            }
+        });
+        return result[0];
+    }
+
+    private void install(Path path, Node node) {
+        roots.keySet().removeIf(root -> {
+            if (root.startsWith(path)) {
+                entries -= roots.get(root).entries();
+                return true;
+            }
+            return false;
+        });
+        if (node.entries() > maxEntries) {
+            return;
+        }
+        if (entries + node.entries() > maxEntries) {
+            log.info("Tree index is full, dropping {} entries", entries);
+            roots.clear();
+            entries = 0;
+        }
+        node.parent = null;
+        roots.put(path, node);
+        entries += node.entries();
+    }
+
+    /**
+     * Put node at the path (replacing the old one), path is in an indexed tree
+     */
+    private void attach(Path path, Node node) {
+        if (roots.containsKey(path)) {
+            entries -= roots.get(path).entries();
+            roots.remove(path);
+            install(path, node);
+            return;
+        }
+        Node parent = find(path.getParent());
+        if (parent == null) {
+            dropRootOf(path, null);
+            return;
+        }
+        boolean added = !parent.children.containsKey(node.name);
+        attachTo(parent, node);
+        if (added) {
+            touch(parent, path.getParent());
+        }
+    }
+
+    /**
+     * Read modification time of a directory whose entries were added or removed
+     */
+    private void touch(Node dir, Path dirPath) {
+        try {
+            dir.setModified(Files.getLastModifiedTime(dirPath, LinkOption.NOFOLLOW_LINKS).toMillis());
+        } catch (IOException e) {
+            //deleted meanwhile, removed by its own update
+        }
+    }
+
+    private void attachTo(Node parent, Node node) {
+        Node old = parent.children.get(node.name);
+        if (old != null) {
+            detach(old);
+        }
+        parent.children.put(node.name, node);
+        node.parent = parent;
+        parent.changed(node.size, node.files, node.directories);
+        parent.raiseNewest(node.newest);
+        entries += node.entries();
+        if (entries > maxEntries) {
+            log.info("Tree index is full, dropping {} entries", entries);
+            roots.clear();
+            entries = 0;
+        }
+    }
+
+    private void detach(Node node) {
+        Node parent = node.parent;
+        parent.children.remove(node.name);
+        node.parent = null;
+        parent.changed(-node.size, -node.files, -node.directories);
+        parent.lowered(node.newest);
+        entries -= node.entries();
+    }
+
+    private void dropRootOf(Path path, IOException e) {
+        lock.lock();
+        try {
+            for (Path dir = path; dir != null; dir = dir.getParent()) {
+                Node root = roots.remove(dir);
+                if (root != null) {
+                    entries -= root.entries();
+                    if (e != null) {
+                        log.warn("Failed to update tree index of: {}", dir, e);
+                    }
+                    return;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Indexed tree containing the path
+     */
+    private Node rootOf(Path path) {
+        for (Path dir = path; dir != null; dir = dir.getParent()) {
+            Node root = roots.get(dir);
+            if (root != null) {
+                return root;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Node of the path, null if it is not indexed
+     */
+    private Node find(Path path) {
+        Path rootPath = null;
+        for (Path dir = path; dir != null; dir = dir.getParent()) {
+            if (roots.containsKey(dir)) {
+                rootPath = dir;
+                break;
+            }
+        }
+        if (rootPath == null) {
+            return null;
+        }
+        Node node = roots.get(rootPath);
+        for (Path name : rootPath.relativize(path)) {
+            if (name.toString().isEmpty()) {
+                break;
+            }
+            node = node.children == null ? null : node.children.get(name.toString());
+            if (node == null) {
+                return null;
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Highest path between the indexed tree and the path (inclusive) which is not indexed, null if the parent is
+     */
+    private Path topMissing(Path path) {
+        Path parent = path.getParent();
+        if (parent == null || find(parent) != null || roots.containsKey(path)) {
+            return null;
+        }
+        Path top = path;
+        for (Path dir = parent; dir != null && find(dir) == null; dir = dir.getParent()) {
+            top = dir;
+        }
+        return top;
+    }
+
+    private static final class Node {
+        private String name;
+        private Node parent;
+        private final Map<String, Node> children;
+        private long modified;
+
+        //totals of the subtree, node itself included
+        private long size;
+        private long files;
+        private long directories;
+        private long newest;
+
+        private Node(String name, Map<String, Node> children, long modified) {
+            this.name = name;
+            this.children = children;
+            this.modified = modified;
+            this.newest = modified;
+        }
+
+        private static Node file(String name, BasicFileAttributes attrs) {
+            Node node = new Node(name, null, attrs.lastModifiedTime().toMillis());
+            node.size = attrs.size();
+            node.files = 1;
+            return node;
+        }
+
+        private static Node directory(String name, BasicFileAttributes attrs) {
+            Node node = new Node(name, new HashMap<>(), attrs.lastModifiedTime().toMillis());
+            node.directories = 1;
+            return node;
+        }
+
+        private boolean isDirectory() {
+            return children != null;
+        }
+
+        private long entries() {
+            return files + directories;
+        }
+
+        private Totals totals() {
+            return new Totals(size, files, Math.max(directories - 1, 0), newest);
+        }
+
+        /**
+         * Add child while the tree is being built, totals of this node only
+         */
+        private void add(Node child) {
+            children.put(child.name, child);
+            child.parent = this;
+            size += child.size;
+            files += child.files;
+            directories += child.directories;
+            newest = Math.max(newest, child.newest);
+        }
+
+        /**
+         * Apply change of totals to this node and all ancestors
+         */
+        private void changed(long sizeDelta, long filesDelta, long directoriesDelta) {
+            for (Node node = this; node != null; node = node.parent) {
+                node.size += sizeDelta;
+                node.files += filesDelta;
+                node.directories += directoriesDelta;
+            }
+        }
+
+        private void setModified(long value) {
+            long old = modified;
+            modified = value;
+            if (value >= old) {
+                raiseNewest(value);
+            }
+            else {
+                lowered(old);
+            }
+        }
+
+        /**
+         * Time under this node may be newer, ancestors are updated up to the first one which has a newer time
+         */
+        private void raiseNewest(long value) {
+            for (Node node = this; node != null && node.newest < value; node = node.parent) {
+                node.newest = value;
+            }
+        }
+
+        /**
+         * Time under this node was removed or made older. Children are rescanned only where it was the newest
+         */
+        private void lowered(long old) {
+            for (Node node = this; node != null && node.newest == old; node = node.parent) {
+                long value = node.modified;
+                if (node.children != null) {
+                    for (Node child : node.children.values()) {
+                        value = Math.max(value, child.newest);
+                    }
+                }
+                if (value == old) {
+                    //another entry has the same time
+                    break;
+                }
+                node.newest = value;
+            }
+        }
+    }
+
+}
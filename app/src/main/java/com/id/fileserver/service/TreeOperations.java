@@ -0,0 +1,433 @@
+package com.id.fileserver.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.InterruptedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parallel copy, delete, find and grep of directory trees.
+ * <p>
+ * Every directory is a fork-join task: its files are processed by the task itself, subdirectories are forked.
+ * Grep forks every file too, so files of one directory are searched in parallel.
+ * Number of threads working on the file system at once is limited by the pool parallelism.
+ */
+public class TreeOperations implements Closeable {
+
+    /**
+     * Path found by {@link #find(Path, PathMatcher, int, int)}
+     */
+    public record Found(Path path, BasicFileAttributes attrs) {
+    }
+
+    //results waiting for the consumer, the walk pauses when it is full
+    private static final int RESULT_QUEUE_SIZE = 1024;
+
+    private final ForkJoinPool pool;
+    private final FileCopier copier;
+
+    public TreeOperations(int parallelism, FileCopier copier) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.copier = copier;
+    }
+
+    /**
+     * Copy directory with its content. Target directory is created if missing, existing files are replaced.
+     * Symbolic links are copied as links, not followed; special files are skipped. Modification times are kept
+     *
+     * @param source   source directory
+     * @param target   target directory (copy of source, not its parent)
+     * @param progress progress
+     */
+    public void copy(Path source, Path target, TreeProgress progress) throws IOException {
+        if (target.startsWith(source)) {
+            throw new IOException("Target is inside source: " + target);
+        }
+        invoke(new CopyTask(source, target, progress));
+    }
+
+    /**
+     * Delete directory with its content. Symbolic links are deleted, not followed
+     *
+     * @param dir      directory
+     * @param progress progress
+     */
+    public void delete(Path dir, TreeProgress progress) throws IOException {
+        invoke(new DeleteTask(dir, progress));
+    }
+
+    /**
+     * Find files and directories under a directory (not the directory itself). Directories are listed
+     * in parallel, so paths come in no particular order. Symbolic links are not followed.
+     * <p>
+     * Paths are streamed as they are found; the walk stops when the limit is reached or the stream is closed,
+     * so the stream must be closed after use.
+     *
+     * @param dir      directory
+     * @param matcher  matcher of paths relative to the directory
+     * @param maxDepth max depth below the directory (1 for its children only), 0 for no limit
+     * @param limit    max number of paths found
+     */
+    public Stream<Found> find(Path dir, PathMatcher matcher, int maxDepth, int limit) {
+        ResultQueue<Found> queue = new ResultQueue<>(limit);
+        return stream(new FindTask(dir, dir, 1, matcher, maxDepth, queue), queue);
+    }
+
+    /**
+     * Grep a file, or all files under a directory. Files are searched in parallel, so matches of different files
+     * come in no particular order. Symbolic links are not followed.
+     * <p>
+     * Matches are streamed as they are found; the search stops when the limit is reached, the search runs out
+     * of its budget or the stream is closed, so the stream must be closed after use.
+     *
+     * @param start  file or directory
+     * @param search search
+     * @param limit  max number of matches
+     */
+    public Stream<FileGrep.Match> grep(Path start, FileGrep.Search search, int limit) {
+        ResultQueue<FileGrep.Match> queue = new ResultQueue<>(limit);
+        return stream(new GrepTask(start, search, queue), queue);
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private <T> Stream<T> stream(RecursiveAction walk, ResultQueue<T> queue) {
+        pool.execute(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                try {
+                    walk.invoke();
+                    queue.finish(null);
+                } catch (RuntimeException e) {
+                    queue.finish(e);
+                }
+            }
+        });
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(queue, Spliterator.NONNULL), false)
+                .onClose(queue::close);
+    }
+
+    private void invoke(ForkJoinTask<?> task) throws IOException {
+        try {
+            pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<Path> list(Path dir) {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+            List<Path> result = new ArrayList<>();
+            children.forEach(result::add);
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class CopyTask extends RecursiveAction {
+        private final Path source;
+        private final Path target;
+        private final TreeProgress progress;
+
+        private CopyTask(Path source, Path target, TreeProgress progress) {
+            this.source = source;
+            this.target = target;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            progress.checkCancelled();
+            List<CopyTask> subtasks = new ArrayList<>();
+            try {
+                Files.createDirectories(target);
+                for (Path child : list(source)) {
+                    Path childTarget = target.resolve(child.getFileName().toString());
+                    BasicFileAttributes attrs = Files.readAttributes(
+                            child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        subtasks.add(new CopyTask(child, childTarget, progress));
+                    }
+                    else if (attrs.isSymbolicLink()) {
+                        //copied as a link, never followed (a loop, or data outside of the root directory)
+                        progress.checkCancelled();
+                        Files.deleteIfExists(childTarget);
+                        Files.createSymbolicLink(childTarget, Files.readSymbolicLink(child));
+                        progress.fileDone(0);
+                    }
+                    else if (attrs.isRegularFile()) {
+                        progress.checkCancelled();
+                        //times are kept like the time of directories
+                        progress.fileDone(copier.copy(child, childTarget, true));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subtasks);
+            //subdirectories created by the subtasks change the time
+            try {
+                Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            progress.directoryDone();
+        }
+    }
+
+    private static class DeleteTask extends RecursiveAction {
+        private final Path dir;
+        private final TreeProgress progress;
+
+        private DeleteTask(Path dir, TreeProgress progress) {
+            this.dir = dir;
+            this.progress = progress;
+        }
+
+        @Override
+        protected void compute() {
+            progress.checkCancelled();
+            List<DeleteTask> subtasks = new ArrayList<>();
+            try {
+                for (Path child : list(dir)) {
+                    BasicFileAttributes attrs = Files.readAttributes(
+                            child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (attrs.isDirectory()) {
+                        subtasks.add(new DeleteTask(child, progress));
+                    }
+                    else {
+                        progress.checkCancelled();
+                        Files.deleteIfExists(child);
+                        progress.fileDone(attrs.size());
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            //children first
+            invokeAll(subtasks);
+            try {
+                Files.deleteIfExists(dir);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            progress.directoryDone();
+        }
+    }
+
+    /**
+     * Results of the walk (producers) for the stream (consumer)
+     */
+    private static class ResultQueue<T> implements Iterator<T> {
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(RESULT_QUEUE_SIZE);
+        private final int limit;
+        private final AtomicInteger offered = new AtomicInteger();
+        private volatile boolean closed;
+        private int taken;
+        private Object next;
+
+        private ResultQueue(int limit) {
+            this.limit = limit;
+        }
+
+        /**
+         * @return false if the walk should stop
+         */
+        private boolean offer(T result) {
+            if (isDone() || offered.incrementAndGet() > limit) {
+                return false;
+            }
+            put(result);
+            return !isDone();
+        }
+
+        private boolean isDone() {
+            return closed || offered.get() >= limit;
+        }
+
+        private void finish(RuntimeException e) {
+            put(e != null ? e : END);
+        }
+
+        private void put(Object item) {
+            try {
+                //pool gets a spare thread while the walk waits for a slow consumer
+                ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                    private boolean done;
+
+                    @Override
+                    public boolean block() throws InterruptedException {
+                        //consumer may stop reading, only closing ends the wait
+                        while (!done && !closed) {
+                            done = queue.offer(item, 100, TimeUnit.MILLISECONDS);
+                        }
+                        return true;
+                    }
+
+                    @Override
+                    public boolean isReleasable() {
+                        return done || closed || (done = queue.offer(item));
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+        }
+
+        private void close() {
+            closed = true;
+            queue.clear();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && taken < limit && !closed) {
+                try {
+                    next = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Interrupted while walking"));
+                }
+                if (next instanceof RuntimeException e) {
+                    next = END;
+                    throw e;
+                }
+            }
+            return next != null && next != END;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            T result = (T) next;
+            next = null;
+            taken++;
+            return result;
+        }
+    }
+
+    private static class FindTask extends RecursiveAction {
+        private final Path start;
+        private final Path dir;
+        private final int depth;
+        private final PathMatcher matcher;
+        private final int maxDepth;
+        private final ResultQueue<Found> queue;
+
+        private FindTask(Path start, Path dir, int depth, PathMatcher matcher, int maxDepth,
+                         ResultQueue<Found> queue) {
+            this.start = start;
+            this.dir = dir;
+            this.depth = depth;
+            this.matcher = matcher;
+            this.maxDepth = maxDepth;
+            this.queue = queue;
+        }
+
+        @Override
+        protected void compute() {
+            List<FindTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child : children) {
+                    if (queue.isDone()) {
+                        return;
+                    }
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        //deleted meanwhile
+                        continue;
+                    }
+                    if (matcher.matches(start.relativize(child)) && !queue.offer(new Found(child, attrs))) {
+                        return;
+                    }
+                    if (attrs.isDirectory() && (maxDepth == 0 || depth < maxDepth)) {
+                        subtasks.add(new FindTask(start, child, depth + 1, matcher, maxDepth, queue));
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                //deleted meanwhile
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+    private static class GrepTask extends RecursiveAction {
+        private final Path path;
+        private final FileGrep.Search search;
+        private final ResultQueue<FileGrep.Match> queue;
+
+        private GrepTask(Path path, FileGrep.Search search, ResultQueue<FileGrep.Match> queue) {
+            this.path = path;
+            this.search = search;
+            this.queue = queue;
+        }
+
+        @Override
+        protected void compute() {
+            List<GrepTask> subtasks = new ArrayList<>();
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                        path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attrs.isRegularFile()) {
+                    search.grep(path, queue::offer);
+                    return;
+                }
+                if (!attrs.isDirectory()) {
+                    return;
+                }
+                try (DirectoryStream<Path> children = Files.newDirectoryStream(path)) {
+                    for (Path child : children) {
+                        if (queue.isDone() || search.isExceeded()) {
+                            return;
+                        }
+                        subtasks.add(new GrepTask(child, search, queue));
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                //deleted meanwhile
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subtasks);
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.id.fileserver.service;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a directory tree operation, can be read and cancelled from other threads
+ */
+public class TreeProgress {
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong directories = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile boolean cancelled;
+
+    public long files() {
+        return files.get();
+    }
+
+    public long directories() {
+        return directories.get();
+    }
+
+    public long bytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Request cancellation, operation stops as soon as running file operations complete
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public String toString() {
+        return "%d files, %d directories, %d bytes".formatted(files(), directories(), bytes());
+    }
+
+    void fileDone(long size) {
+        files.incrementAndGet();
+        bytes.addAndGet(size);
+    }
+
+    void directoryDone() {
+        directories.incrementAndGet();
+    }
+
+    void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Cancelled");
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.service.FileChannelCache.Mode;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AppendBatcherTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+
+    private final PathLocks locks = new PathLocks();
+    private final FileChannelCache channelCache = new FileChannelCache(16, TimeUnit.SECONDS.toNanos(60));
+    private final AppendBatcher batcher = new AppendBatcher(
+            locks, channelCache, 64 * 1024, TimeUnit.MICROSECONDS.toNanos(100));
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        FileUtils.cleanDirectory(rootPath.toFile());
+    }
+
+    @Test
+    void concurrentAppendsAreBatched() throws Exception {
+        //given
+        Path file = rootPath.resolve("file1");
+        Files.createFile(file);
+
+        //when: append concurrently
+        int lineNum = 5_000;
+        ExecutorService pool = Executors.newFixedThreadPool(50);
+        for (int i = 0; i < lineNum; i++) {
+            String data = "line" + i + "\n";
+            pool.execute(() -> {
+                try {
+                    append(file, data);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        //then: all lines are written, none is torn
+        List<String> lines = Files.readAllLines(file);
+        assertThat(lines).hasSize(lineNum);
+        assertThat(lines).allMatch(line -> line.matches("line\\d+"));
+        assertThat(lines.stream().distinct().count()).isEqualTo(lineNum);
+
+        //and: appends were grouped
+        assertThat(batcher.appendCount()).isEqualTo(lineNum);
+        assertThat(batcher.batchCount()).isLessThan(lineNum);
+    }
+
+    @Test
+    void fileReplacedOutsideOfService() throws Exception {
+        //given
+        Path file = rootPath.resolve("file1");
+        Files.createFile(file);
+        append(file, "first");
+
+        //when: file is deleted and created again, cached channel becomes stale
+        Files.delete(file);
+        Files.createFile(file);
+        append(file, "second");
+
+        //then
+        assertThat(Files.readString(file)).isEqualTo("second");
+    }
+
+    @Test
+    void idleQueuesAreRemoved() throws Exception {
+        //given
+        Path file = rootPath.resolve("file1");
+        Files.createFile(file);
+        append(file, "data");
+
+        //when: two checks without appends in between
+        batcher.removeIdle();
+        batcher.removeIdle();
+        channelCache.evictIdle();
+
+        //then: file can still be appended
+        append(file, "more");
+        assertThat(Files.readString(file)).isEqualTo("datamore");
+    }
+
+    @Test
+    void failedBatchReleasesAllCallers() throws Exception {
+        //given: channel fails once, appends linger to be batched together
+        AtomicBoolean failing = new AtomicBoolean(true);
+        FileChannelCache failingCache = new FileChannelCache(16, TimeUnit.SECONDS.toNanos(60)) {
+            @Override
+            public LeaseCache.Lease<FileChannel> acquire(Path path, Mode mode, Object fileKey) throws IOException {
+                if (failing.getAndSet(false)) {
+                    throw new IllegalStateException("Channel failed");
+                }
+                return super.acquire(path, mode, fileKey);
+            }
+        };
+        AppendBatcher failingBatcher = new AppendBatcher(
+                locks, failingCache, 64 * 1024, TimeUnit.MILLISECONDS.toNanos(500));
+        Path file = rootPath.resolve("file1");
+        Files.createFile(file);
+        Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+
+        //when
+        ExecutorService pool = Executors.newFixedThreadPool(5);
+        List<Future<?>> appends = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            appends.add(pool.submit(() -> {
+                failingBatcher.append(file, fileKey, ByteBuffer.wrap("data".getBytes(StandardCharsets.UTF_8)));
+                return null;
+            }));
+        }
+        pool.shutdown();
+
+        //then: every caller returns, those of the failed batch with the error
+        assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+        int failed = 0;
+        for (Future<?> append : appends) {
+            try {
+                append.get();
+            } catch (ExecutionException e) {
+                assertThat(e.getCause()).isInstanceOf(IOException.class)
+                        .hasRootCauseMessage("Channel failed");
+                failed++;
+            }
+        }
+        assertThat(failed).isPositive();
+        assertThat(Files.size(file)).isEqualTo(4L * (5 - failed));
+
+        //and: file can still be appended
+        failingBatcher.append(file, fileKey, ByteBuffer.wrap("more".getBytes(StandardCharsets.UTF_8)));
+        assertThat(Files.size(file)).isEqualTo(4L * (6 - failed));
+    }
+
+    private void append(Path file, String data) throws IOException {
+        Object fileKey = Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        batcher.append(file, fileKey, ByteBuffer.wrap(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.id.fileserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlockCacheTest {
+
+    private static final String DATA = "0123456789".repeat(20);
+
+    //8 blocks of 10 bytes
+    private final BlockCache cache = new BlockCache(80, 10);
+    private final Path file = Paths.get("/file1");
+    private final AtomicInteger loads = new AtomicInteger();
+    private int fileSize = DATA.length();
+
+    @Test
+    void repeatedReadIsHit() throws Exception {
+        //when
+        assertThat(read(file, 1, 5, 20)).isEqualTo("56789012345678901234");
+        assertThat(read(file, 1, 5, 20)).isEqualTo("56789012345678901234");
+
+        //then: blocks 0,1,2 loaded once
+        assertThat(loads.get()).isEqualTo(3);
+        assertThat(cache.missCount()).isEqualTo(3);
+        assertThat(cache.hitCount()).isEqualTo(3);
+    }
+
+    @Test
+    void readAtEndOfFile() throws Exception {
+        //when
+        String result = read(file, 1, 195, 20);
+
+        //then
+        assertThat(result).isEqualTo("56789");
+        assertThat(read(file, 1, 200, 20)).isEmpty();
+    }
+
+    @Test
+    void otherFileKeyIsMiss() throws Exception {
+        //given
+        read(file, 1, 0, 10);
+
+        //when
+        read(file, 2, 0, 10);
+
+        //then
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void appendedFileKeepsLoadedBytes() throws Exception {
+        //given: file of 15 bytes, second block partial
+        fileSize = 15;
+        read(file, 1, 0, 15);
+        loads.set(0);
+
+        //when: file has grown, bytes loaded before are read again
+        fileSize = DATA.length();
+        read(file, 1, 0, 15);
+
+        //then
+        assertThat(loads.get()).isZero();
+
+        //when: new bytes of the partial block are read
+        assertThat(read(file, 1, 10, 10)).isEqualTo("0123456789");
+
+        //then: only the partial block is loaded again
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void blocksAreSpreadOverSegments() throws Exception {
+        //given: 1024 blocks, more than one segment
+        BlockCache large = new BlockCache(10 * 1024, 10);
+        Path other = Paths.get("/file2");
+
+        //when
+        for (int i = 0; i < 2; i++) {
+            read(large, file, 1, 0, 200);
+            read(large, other, 1, 0, 200);
+        }
+
+        //then: every block loaded once, found in its segment
+        assertThat(large.size()).isEqualTo(40);
+        assertThat(large.missCount()).isEqualTo(40);
+        assertThat(large.hitCount()).isEqualTo(40);
+
+        //when
+        large.invalidateFile(file);
+
+        //then
+        assertThat(large.size()).isEqualTo(20);
+    }
+
+    @Test
+    void invalidate() throws Exception {
+        //given
+        Path other = Paths.get("/dir/file2");
+        read(file, 1, 0, 10);
+        read(other, 1, 0, 10);
+
+        //when
+        cache.invalidateFile(file);
+
+        //then
+        assertThat(cache.size()).isEqualTo(1);
+
+        //when
+        cache.invalidate(Paths.get("/dir"));
+
+        //then
+        assertThat(cache.size()).isZero();
+        read(file, 1, 0, 10);
+        assertThat(loads.get()).isEqualTo(3);
+    }
+
+    @Test
+    void scanDoesNotEvictHotBlocks() throws Exception {
+        //given: hot blocks read several times
+        for (int i = 0; i < 5; i++) {
+            read(file, 1, 0, 40);
+        }
+
+        //when: scan of a large file
+        Path large = Paths.get("/large");
+        for (int position = 0; position < DATA.length(); position += 10) {
+            read(large, 1, position, 10);
+        }
+        loads.set(0);
+        read(file, 1, 0, 40);
+
+        //then
+        assertThat(loads.get()).isZero();
+        assertThat(cache.size()).isEqualTo(8);
+    }
+
+    private String read(Path path, Object fileKey, long position, int length) throws Exception {
+        return read(cache, path, fileKey, position, length);
+    }
+
+    private String read(BlockCache cache, Path path, Object fileKey, long position, int length) throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        cache.read(path, fileKey, position, buffer, (pos, target) -> {
+            loads.incrementAndGet();
+            if (pos >= fileSize) {
+                return -1;
+            }
+            int count = (int) Math.min(target.remaining(), fileSize - pos);
+            target.put(DATA.substring((int) pos, (int) pos + count).getBytes(StandardCharsets.UTF_8));
+            return count;
+        });
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.id.fileserver.service;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FileCopierTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+    private final Path stagingDir = Paths.get("./target/unit-copy-staging").toAbsolutePath().normalize();
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        FileUtils.cleanDirectory(rootPath.toFile());
+        FileUtils.deleteDirectory(stagingDir.toFile());
+    }
+
+    @Test
+    void copyReplacesTargetAndKeepsModificationTime() throws IOException {
+        //given
+        FileCopier copier = new FileCopier(stagingDir);
+        copier.start();
+        Path source = createFile("source", 1024 * 1024);
+        Path target = rootPath.resolve("target");
+        Files.writeString(target, "old content which is longer than nothing");
+        FileTime modified = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+        Files.setLastModifiedTime(source, modified);
+
+        //when
+        long copied = copier.copy(source, target, true);
+
+        //then
+        assertThat(copied).isEqualTo(1024 * 1024);
+        assertThat(Files.readAllBytes(target)).isEqualTo(Files.readAllBytes(source));
+        assertThat(Files.getLastModifiedTime(target)).isEqualTo(modified);
+        assertThat(copier.clonedCount()).isZero();
+        assertThat(copier.transferredCount()).isEqualTo(1);
+        try (Stream<Path> files = Files.list(stagingDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void copyIsModifiedNowUnlessTimeIsKept() throws IOException {
+        //given
+        FileCopier copier = new FileCopier(stagingDir);
+        copier.start();
+        Path source = createFile("source", 100);
+        FileTime modified = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+        Files.setLastModifiedTime(source, modified);
+
+        //when
+        copier.copy(source, rootPath.resolve("target"), false);
+
+        //then
+        assertThat(Files.getLastModifiedTime(rootPath.resolve("target")).toInstant())
+                .isAfter(Instant.parse("2020-01-02T00:00:00Z"));
+    }
+
+    @Test
+    void startDeletesUnfinishedCopies() throws IOException {
+        //given: temporary file left by a crash
+        Files.createDirectories(stagingDir);
+        Files.writeString(stagingDir.resolve("unfinished.tmp"), "partial");
+        FileCopier copier = new FileCopier(stagingDir);
+
+        //when
+        copier.start();
+
+        //then
+        try (Stream<Path> files = Files.list(stagingDir)) {
+            assertThat(files).isEmpty();
+        }
+    }
+
+    @Test
+    void cloneFallsBackToTransfer() throws IOException {
+        //given: every file is worth cloning, file system may not support it
+        FileCopier copier = new FileCopier(stagingDir, 0);
+        copier.start();
+        Path source = createFile("source", 100_000);
+        Files.writeString(rootPath.resolve("target2"), "old");
+
+        //when
+        copier.copy(source, rootPath.resolve("target1"), false);
+        copier.copy(source, rootPath.resolve("target2"), false);
+
+        //then: content is copied either way
+        assertThat(Files.readAllBytes(rootPath.resolve("target1"))).isEqualTo(Files.readAllBytes(source));
+        assertThat(Files.readAllBytes(rootPath.resolve("target2"))).isEqualTo(Files.readAllBytes(source));
+        assertThat(copier.clonedCount() + copier.transferredCount()).isEqualTo(2);
+    }
+
+    @Test
+    void copyToItselfKeepsContent() throws IOException {
+        //given: every file is worth cloning
+        FileCopier copier = new FileCopier(stagingDir, 0);
+        copier.start();
+        Path source = createFile("source", 11);
+        Path dir = Files.createDirectories(rootPath.resolve("dir"));
+        byte[] content = Files.readAllBytes(source);
+
+        //when: same file, also by a path which is not normalized
+        copier.copy(source, source, false);
+        copier.copy(source, rootPath.resolve("dir/../source"), false);
+
+        //then
+        assertThat(Files.readAllBytes(source)).isEqualTo(content);
+        assertThat(copier.clonedCount() + copier.transferredCount()).isZero();
+        try (Stream<Path> files = Files.list(rootPath)) {
+            assertThat(files).containsExactlyInAnyOrder(source, dir);
+        }
+    }
+
+    private Path createFile(String name, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        return Files.write(rootPath.resolve(name), data);
+    }
+
+}
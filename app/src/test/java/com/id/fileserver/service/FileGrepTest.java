@@ -0,0 +1,88 @@
+package com.id.fileserver.service;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileGrepTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        FileUtils.cleanDirectory(rootPath.toFile());
+    }
+
+    @Test
+    void longLinesAreMatchedInPieces() throws IOException {
+        //given
+        FileGrep grep = new FileGrep(8, 10_000, 1);
+        Path file = Files.writeString(rootPath.resolve("file1"), "abc\n0123456789xyz\nxyz");
+        List<FileGrep.Match> matches = new ArrayList<>();
+
+        //when
+        try (FileGrep.Search search = grep.start(Pattern.compile("xyz"))) {
+            assertThat(search.grep(file, matches::add)).isTrue();
+        }
+
+        //then: piece of the long line after the buffer keeps its line number
+        assertThat(matches).extracting(FileGrep.Match::offset, FileGrep.Match::lineNumber, FileGrep.Match::line)
+                .containsExactly(tuple(12L, 2L, "89xyz"), tuple(18L, 3L, "xyz"));
+    }
+
+    @Test
+    void searchIsStoppedByBudget() throws IOException {
+        //given: pattern with catastrophic backtracking
+        FileGrep grep = new FileGrep(1024, 100, 1);
+        Path file = Files.writeString(rootPath.resolve("file1"), "ok\n" + "a".repeat(40) + "!\nok\n");
+        List<FileGrep.Match> matches = new ArrayList<>();
+
+        //when
+        long start = System.nanoTime();
+        boolean completed;
+        try (FileGrep.Search search = grep.start(Pattern.compile("((a|a))+?!x|ok"))) {
+            completed = search.grep(file, matches::add);
+
+            //then
+            assertThat(search.isStopped()).isTrue();
+        }
+        assertThat(completed).isFalse();
+        assertThat(matches).extracting(FileGrep.Match::line).containsExactly("ok");
+        assertThat(System.nanoTime() - start).isLessThan(5_000_000_000L);
+    }
+
+    @Test
+    void tooManySearches() {
+        //given
+        FileGrep grep = new FileGrep(1024, 10_000, 1);
+        FileGrep.Search search = grep.start(Pattern.compile("x"));
+
+        //then
+        assertThat(assertThrows(ServerBusyException.class, () -> grep.start(Pattern.compile("y"))))
+                .hasMessage("Too many searches");
+
+        //when
+        search.close();
+        search.close();
+
+        //then: permit is released once
+        grep.start(Pattern.compile("y"));
+        assertThrows(ServerBusyException.class, () -> grep.start(Pattern.compile("z")));
+    }
+
+}
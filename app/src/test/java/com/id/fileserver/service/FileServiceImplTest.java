@@ -1,31 +1,56 @@
 package com.id.fileserver.service;
 
+import com.id.fileserver.model.DirectoryPage;
 import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.GrepMatch;
+import com.id.fileserver.model.GrepResult;
+import com.id.fileserver.model.TreeSummary;
 import org.apache.commons.io.FileUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class FileServiceImplTest {
 
     private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
 
-    private final ConcurrentMap<Path, ReentrantLock> locks = new ConcurrentHashMap<>();
-    private final FileServiceImpl service = new FileServiceImpl(rootPath, locks);
+    private final PathLocks locks = new PathLocks();
+    private final BufferPool transferBuffers = new BufferPool(1024, 2, true);
+    private final FileChannelCache channelCache = new FileChannelCache(16, TimeUnit.SECONDS.toNanos(60));
+    private final AppendBatcher appendBatcher = new AppendBatcher(locks, channelCache, 1024 * 1024, 0);
+    private final BufferPool readBuffers = new BufferPool(16, 2, false);
+    private final FileServiceLimits limits = new FileServiceLimits(1024, 100, 10_000);
+    private final MappedFileCache mappedFiles = new MappedFileCache(
+            Long.MAX_VALUE, 4, TimeUnit.SECONDS.toNanos(60), 1024);
+    private final BlockCache blockCache = new BlockCache(64, 16);
+    private final MetadataCache metadataCache = new MetadataCache(100, dir -> true);
+    private final FileCopier fileCopier = new FileCopier(Paths.get("./target/unit-copy-staging"));
+    private final TreeOperations treeOperations = new TreeOperations(2, fileCopier);
+    private final TreeIndex treeIndex = new TreeIndex(1000);
+    private final PathIndex pathIndex = new PathIndex(rootPath, Paths.get("./target/unit-path-index"), false, 0);
+    private final FileGrep fileGrep = new FileGrep(16, 10_000, 2);
+    private final FileWaiters fileWaiters = new FileWaiters(2);
+    private final FileServiceImpl service = new FileServiceImpl(rootPath, locks, transferBuffers, readBuffers, limits,
+            channelCache, mappedFiles, blockCache, metadataCache, appendBatcher, treeOperations, fileCopier, treeIndex,
+            pathIndex, fileGrep, fileWaiters);
 
     @BeforeEach
     void beforeEach() throws IOException {
@@ -33,6 +58,7 @@ class FileServiceImplTest {
             Files.createDirectories(rootPath);
         }
         FileUtils.cleanDirectory(rootPath.toFile());
+        fileCopier.start();
     }
 
     @Test
@@ -86,6 +112,340 @@ class FileServiceImplTest {
         assertThat(fileInfo).isEqualTo(expected);
     }
 
+    @Test
+    void fileInfoIsCached() throws IOException {
+        //given
+        Path file1 = rootPath.resolve("file1");
+        service.createFile("file1");
+        service.appendToFile("file1", "abc");
+        assertThat(service.getFileInfo("file1").getSize()).isEqualTo(3);
+
+        //when: file is changed outside the service (no watcher here)
+        Files.writeString(file1, "abcdef");
+
+        //then: cached info is returned
+        assertThat(service.getFileInfo("file1").getSize()).isEqualTo(3);
+        assertThat(service.listDirectory(".")).extracting(FileInfo::getSize).containsExactly(3L);
+
+        //when: file is changed by the service
+        service.appendToFile("file1", "g");
+
+        //then
+        assertThat(service.getFileInfo("file1").getSize()).isEqualTo(7);
+
+        //when
+        service.deleteFile("file1");
+
+        //then
+        assertThrows(NoSuchFileException.class, () -> service.getFileInfo("file1"));
+    }
+
+    @Test
+    void listDirectoryPages() throws IOException {
+        //given
+        Path dir = Files.createDirectories(rootPath.resolve("dir"));
+        int fileNum = 25;
+        for (int i = 0; i < fileNum; i++) {
+            Files.createFile(dir.resolve("file" + i));
+        }
+
+        //when: all pages are read
+        List<String> names = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            DirectoryPage page = service.listDirectory("dir", 10, cursor);
+            page.getEntries().forEach(info -> names.add(info.getName()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        //then
+        assertThat(pages).isEqualTo(3);
+        assertThat(names).hasSize(fileNum).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void listDirectoryPagesWhileDeleting() throws IOException {
+        //given
+        Path dir = Files.createDirectories(rootPath.resolve("dir"));
+        for (int i = 0; i < 10; i++) {
+            Files.createFile(dir.resolve("file" + i));
+        }
+        DirectoryPage first = service.listDirectory("dir", 5, null);
+
+        //when: first entry and the last entry of the page are deleted
+        Files.delete(dir.resolve(first.getEntries().get(0).getName()));
+        Files.delete(dir.resolve(first.getEntries().get(4).getName()));
+        DirectoryPage second = service.listDirectory("dir", 5, first.getNextCursor());
+
+        //then: no entry is repeated
+        List<String> firstNames = first.getEntries().stream().map(FileInfo::getName).toList();
+        assertThat(second.getEntries()).extracting(FileInfo::getName).doesNotContainAnyElementsOf(firstNames);
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    @Test
+    void listDirectoryPageErrors() throws IOException {
+        //given
+        Files.createDirectories(rootPath.resolve("dir"));
+
+        //then
+        assertThat(assertThrows(IllegalArgumentException.class, () -> service.listDirectory("dir", 0, null)))
+                .hasMessage("Invalid limit");
+        assertThat(assertThrows(IllegalArgumentException.class, () -> service.listDirectory("dir", 101, null)))
+                .hasMessage("Invalid limit");
+        assertThat(assertThrows(IllegalArgumentException.class, () -> service.listDirectory("dir", 10, "xyz")))
+                .hasMessage("Invalid cursor");
+    }
+
+    @Test
+    void readFromFile() throws IOException {
+        //given
+        Path file1 = rootPath.resolve("file1");
+        Files.writeString(file1, "0123456789".repeat(10));
+
+        //when: read fits into pooled buffer
+        String result = service.readFromFile("file1", 5, 10);
+
+        //then
+        assertThat(result).isEqualTo("5678901234");
+
+        //when: read is larger than pooled buffer
+        result = service.readFromFile("file1", 70, 100);
+
+        //then: rest of the file is returned
+        assertThat(result).isEqualTo("012345678901234567890123456789");
+
+        //when: file is appended after it was read
+        service.appendToFile("file1", "abc");
+        result = service.readFromFile("file1", 95, 10);
+
+        //then
+        assertThat(result).isEqualTo("56789abc");
+
+        //when: offset is past the end of file
+        result = service.readFromFile("file1", 200, 10);
+
+        //then
+        assertThat(result).isEmpty();
+
+        //when: length is above the limit
+        IllegalArgumentException thrown = assertThrows(
+                IllegalArgumentException.class,
+                () -> service.readFromFile("file1", 0, 1025));
+
+        //then
+        assertThat(thrown).hasMessage("Invalid length");
+    }
+
+    @Test
+    void treeSummaryFollowsChanges() throws IOException {
+        //given
+        service.createDirectory("dir1/dir2");
+        service.createFile("dir1/file1");
+        service.appendToFile("dir1/file1", "abc");
+        service.createFile("dir1/dir2/file2");
+        service.appendToFile("dir1/dir2/file2", "de");
+
+        //when
+        TreeSummary summary = service.getTreeSummary("dir1");
+
+        //then
+        assertThat(summary.getPath()).isEqualTo("dir1");
+        assertThat(summary.getSize()).isEqualTo(5);
+        assertThat(summary.getFileCount()).isEqualTo(2);
+        assertThat(summary.getDirectoryCount()).isEqualTo(1);
+
+        //when: tree is changed outside the service (no watcher here)
+        Files.writeString(rootPath.resolve("dir1/file3"), "outside");
+
+        //then: totals come from the index
+        assertThat(service.getTreeSummary("dir1").getFileCount()).isEqualTo(2);
+        Files.delete(rootPath.resolve("dir1/file3"));
+
+        //when: tree is changed by the service
+        service.appendToFile("dir1/dir2/file2", "fgh");
+        service.copyDirectory("dir1/dir2", "dir1/dir3");
+        service.moveFile("dir1/file1", "dir1/dir3/file1");
+        service.createDirectory("dir1/dir4/dir5");
+        service.deleteFile("dir1/dir2/file2");
+
+        //then: index is updated without walking the tree again
+        assertThat(treeIndex.size()).isEqualTo(8);
+        assertThat(service.getTreeSummary("dir1"))
+                .usingRecursiveComparison()
+                .isEqualTo(walkedSummary("dir1"));
+        assertThat(service.getTreeSummary("dir1/dir3").getSize()).isEqualTo(8);
+
+        //when
+        service.moveDirectory("dir1/dir3", ".");
+        service.deleteDirectory("dir1/dir4");
+
+        //then
+        assertThat(service.getTreeSummary("dir1")).usingRecursiveComparison().isEqualTo(walkedSummary("dir1"));
+        assertThat(service.getTreeSummary("dir3")).usingRecursiveComparison().isEqualTo(walkedSummary("dir3"));
+        assertThat(service.getTreeSummary("dir1").getDirectoryCount()).isEqualTo(1);
+        assertThrows(IOException.class, () -> service.getTreeSummary("dir3/file1"));
+    }
+
+    @Test
+    void transferRangeChosenBySize() throws IOException {
+        //given
+        service.createFile("file1");
+        service.appendToFile("file1", "0123456789");
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        List<Long> sizes = new ArrayList<>();
+
+        //when: last 4 bytes, chosen once the size is known
+        long transferred = service.transferFromFile("file1", size -> {
+            sizes.add(size);
+            return new FileService.Range(size - 4, 4);
+        }, Channels.newChannel(target));
+
+        //then
+        assertThat(sizes).containsExactly(10L);
+        assertThat(transferred).isEqualTo(4);
+        assertThat(target.toString(StandardCharsets.UTF_8)).isEqualTo("6789");
+
+        //when: range beyond the size
+        IllegalArgumentException thrown = assertThrows(IllegalArgumentException.class, () -> service.transferFromFile(
+                "file1", size -> new FileService.Range(5, size), Channels.newChannel(target)));
+
+        //then
+        assertThat(thrown).hasMessage("Invalid range");
+        assertThat(service.transferFromFile("file1", 20, 5, Channels.newChannel(target))).isZero();
+    }
+
+    @Test
+    void copyFileToItself() throws IOException {
+        //given
+        service.createFile("file1");
+        service.appendToFile("file1", "hello world");
+
+        //when
+        FileInfo copied = service.copyFile("file1", "./file1");
+
+        //then
+        assertThat(copied.getSize()).isEqualTo(11);
+        assertThat(service.readFromFile("file1", 0, 100)).isEqualTo("hello world");
+    }
+
+    @Test
+    void grepFileAndTree() throws IOException {
+        //given
+        service.createDirectory("dir1/dir2");
+        Files.writeString(rootPath.resolve("dir1/file1"), "error 1\r\nok\r\nerror 2\r\n");
+        Files.writeString(rootPath.resolve("dir1/dir2/file2"), "ok\nlast error");
+
+        //when
+        GrepResult fileResult = service.grep("dir1/file1", "error", 10);
+        GrepResult treeResult = service.grep("dir1", "err?or \\d|last", 10);
+        GrepResult limitedResult = service.grep("dir1", "error", 2);
+
+        //then
+        assertThat(fileResult.isComplete()).isTrue();
+        assertThat(fileResult.getMatches())
+                .extracting(GrepMatch::getPath, GrepMatch::getOffset, GrepMatch::getLineNumber, GrepMatch::getLine)
+                .containsExactly(tuple("dir1/file1", 0L, 1L, "error 1"), tuple("dir1/file1", 13L, 3L, "error 2"));
+        assertThat(treeResult.isComplete()).isTrue();
+        assertThat(treeResult.getMatches())
+                .extracting(GrepMatch::getPath, GrepMatch::getLine)
+                .containsExactlyInAnyOrder(tuple("dir1/file1", "error 1"), tuple("dir1/file1", "error 2"),
+                        tuple("dir1/dir2/file2", "last error"));
+        assertThat(limitedResult.isComplete()).isFalse();
+        assertThat(limitedResult.getMatches()).hasSize(2);
+        assertThat(assertThrows(IllegalArgumentException.class, () -> service.grep("dir1", "(", 10)))
+                .hasMessage("Invalid pattern");
+        assertThat(assertThrows(IllegalArgumentException.class, () -> service.grep("dir1", "error", 101)))
+                .hasMessage("Invalid limit");
+    }
+
+    @Test
+    void appendAndReadBytes() throws IOException {
+        //given: every byte value, not a valid UTF-8 string
+        Path file1 = rootPath.resolve("file1");
+        Files.createFile(file1);
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+
+        //when
+        service.appendBytesToFile("file1", data);
+
+        //then: bytes are stored as they are
+        assertThat(Files.readAllBytes(file1)).isEqualTo(data);
+
+        //when: ranges inside and beyond the pooled buffer
+        byte[] small = service.readBytesFromFile("file1", 250, 10);
+        byte[] large = service.readBytesFromFile("file1", 0, 1000);
+
+        //then
+        assertThat(small).containsExactly(data[250], data[251], data[252], data[253], data[254], data[255]);
+        assertThat(large).isEqualTo(data);
+        assertThat(service.readBytesFromFile("file1", 300, 10)).isEmpty();
+
+        //when: range splits a multibyte character
+        byte[] encoded = "\u00e9\u00e9".getBytes(StandardCharsets.UTF_8);
+        Files.write(rootPath.resolve("file2"), encoded);
+        byte[] half = service.readBytesFromFile("file2", 1, 2);
+
+        //then
+        assertThat(half).containsExactly(encoded[1], encoded[2]);
+
+        //when: empty data
+        IllegalArgumentException thrown = assertThrows(
+                IllegalArgumentException.class,
+                () -> service.appendBytesToFile("file1", new byte[0]));
+
+        //then
+        assertThat(thrown).hasMessage("Invalid data");
+    }
+
+    @Test
+    void readFollowIsWokenByAppend() throws Exception {
+        //given
+        service.createFile("file1");
+        service.appendToFile("file1", "abc");
+
+        //when: bytes past the offset exist
+        byte[] available = service.readFollow("file1", 1, 100, 10_000);
+
+        //then: returned without waiting
+        assertThat(available).isEqualTo("bc".getBytes(StandardCharsets.UTF_8));
+
+        //when: follower waits at the end of the file
+        CompletableFuture<byte[]> followed = CompletableFuture.supplyAsync(() -> {
+            try {
+                return service.readFollow("file1", 3, 100, 10_000);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (fileWaiters.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        service.appendToFile("file1", "de");
+
+        //then: woken by the append, long before the timeout
+        assertThat(followed.get(5, TimeUnit.SECONDS)).isEqualTo("de".getBytes(StandardCharsets.UTF_8));
+        assertThat(fileWaiters.size()).isZero();
+
+        //when: nothing is appended
+        long start = System.nanoTime();
+        byte[] timedOut = service.readFollow("file1", 5, 100, 50);
+
+        //then
+        assertThat(timedOut).isEmpty();
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(assertThrows(IllegalArgumentException.class, () -> service.readFollow("file1", 5, 100, 10_001)))
+                .hasMessage("Invalid timeout");
+        assertThat(assertThrows(IllegalArgumentException.class, () -> service.readFollow("file1", 5, 1025, 10)))
+                .hasMessage("Invalid length");
+    }
+
     @Test
     void testCleanup1() throws IOException {
         //given: 3 files
@@ -117,11 +477,8 @@ class FileServiceImplTest {
         Files.delete(file3);
         service.onScheduled();
 
-        //then
-        assertThat(locks).hasSize(1);
-        assertThat(locks.get(file1)).isNotNull();
-        assertThat(locks.get(file2)).isNull();
-        assertThat(locks.get(file3)).isNull();
+        //then: locks are freed when released, nothing is left for cleanup
+        assertThat(locks.size()).isZero();
     }
 
     @Test
@@ -155,11 +512,23 @@ class FileServiceImplTest {
         FileUtils.deleteDirectory(dir1.toFile());
         service.onScheduled();
 
-        //then
-        assertThat(locks).hasSize(3);
-        assertThat(locks.get(file1)).isNotNull();
-        assertThat(locks.get(file2)).isNotNull();
-        assertThat(locks.get(file3)).isNotNull();
+        //then: surviving files can still be appended, no lock is kept
+        service.appendToFile("dir0/file0", "more");
+        assertThat(Files.readString(file1)).isEqualTo(line + 0 + System.lineSeparator() + "more");
+        assertThat(Files.exists(file2)).isTrue();
+        assertThat(Files.exists(file3)).isTrue();
+        assertThat(locks.size()).isZero();
+    }
+
+    private TreeSummary walkedSummary(String relativePath) throws IOException {
+        TreeIndex.Totals totals = new TreeIndex(0).summary(rootPath.resolve(relativePath));
+        return TreeSummary.builder()
+                .path(relativePath)
+                .size(totals.size())
+                .fileCount(totals.files())
+                .directoryCount(totals.directories())
+                .lastModified(totals.lastModified())
+                .build();
     }
 
     private void checkLines(Path file1, String line, int lineNum) throws IOException {
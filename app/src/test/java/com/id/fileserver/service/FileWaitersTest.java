@@ -0,0 +1,67 @@
+package com.id.fileserver.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FileWaitersTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+
+    @Test
+    void wokenByChangeAfterArm() throws IOException {
+        //given
+        FileWaiters waiters = new FileWaiters(10);
+        Path file = rootPath.resolve("dir1/file1");
+
+        try (FileWaiters.Waiter waiter = waiters.register(file)) {
+            //when: change before arming is not seen
+            waiters.changed(file);
+            waiter.arm();
+
+            //then
+            assertThat(waiter.await(TimeUnit.MILLISECONDS.toNanos(10))).isFalse();
+
+            //when: change of another file
+            waiters.changed(rootPath.resolve("dir1/file2"));
+
+            //then
+            assertThat(waiter.await(TimeUnit.MILLISECONDS.toNanos(10))).isFalse();
+
+            //when: watcher reports the parent directory
+            waiters.onChange(rootPath.resolve("dir1"));
+
+            //then
+            assertThat(waiter.await(0)).isTrue();
+        }
+
+        //then: entry is removed with its last waiter
+        assertThat(waiters.size()).isZero();
+    }
+
+    @Test
+    void tooManyWaiters() {
+        //given
+        FileWaiters waiters = new FileWaiters(1);
+        FileWaiters.Waiter waiter = waiters.register(rootPath.resolve("file1"));
+
+        //then
+        assertThat(assertThrows(ServerBusyException.class, () -> waiters.register(rootPath.resolve("file2"))))
+                .hasMessage("Too many waiters");
+
+        //when
+        waiter.close();
+        waiter.close();
+
+        //then: permit is released once
+        waiters.register(rootPath.resolve("file2"));
+        assertThrows(ServerBusyException.class, () -> waiters.register(rootPath.resolve("file3")));
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.model.JobInfo;
+import com.id.fileserver.model.JobInfo.State;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class JobRegistryTest {
+
+    private final JobRegistry registry = new JobRegistry(1, 3);
+
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void afterEach() {
+        release.countDown();
+        registry.close();
+    }
+
+    @Test
+    void cancelRunningAndQueuedJobs() throws Exception {
+        //given: first job occupies the only thread until cancelled
+        String running = registry.submit("running", progress -> {
+            started.countDown();
+            while (true) {
+                progress.checkCancelled();
+                Thread.sleep(1);
+            }
+        });
+        String queued = registry.submit("queued", progress -> null);
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        //when
+        JobInfo queuedJob = registry.cancel(queued);
+        registry.cancel(running);
+
+        //then
+        assertThat(queuedJob.getState()).isEqualTo(State.CANCELLED);
+        assertThat(awaitJob(running).getState()).isEqualTo(State.CANCELLED);
+    }
+
+    @Test
+    void finishedJobsAreDropped() throws Exception {
+        //given: registry full of finished jobs
+        String first = registry.submit("first", progress -> null);
+        awaitJob(first);
+        awaitJob(registry.submit("second", progress -> null));
+        awaitJob(registry.submit("third", progress -> null));
+
+        //when
+        String fourth = registry.submit("fourth", progress -> {
+            throw new IllegalStateException("failure");
+        });
+
+        //then: the oldest one is dropped
+        JobInfo job = awaitJob(fourth);
+        assertThat(job.getState()).isEqualTo(State.FAILED);
+        assertThat(job.getErrorType()).isEqualTo("IllegalStateException");
+        assertThat(job.getError()).isEqualTo("failure");
+        assertThrows(IllegalArgumentException.class, () -> registry.get(first));
+        assertThat(registry.size()).isEqualTo(3);
+    }
+
+    @Test
+    void jobFailedWithError() throws Exception {
+        //when
+        String id = registry.submit("error", progress -> {
+            throw new StackOverflowError("too deep");
+        });
+
+        //then
+        JobInfo job = awaitJob(id);
+        assertThat(job.getState()).isEqualTo(State.FAILED);
+        assertThat(job.getErrorType()).isEqualTo("StackOverflowError");
+
+        //when: the thread goes on with the next job
+        JobInfo next = awaitJob(registry.submit("next", progress -> null));
+
+        //then
+        assertThat(next.getState()).isEqualTo(State.SUCCEEDED);
+    }
+
+    @Test
+    void tooManyUnfinishedJobs() throws Exception {
+        //given
+        for (int i = 0; i < 3; i++) {
+            registry.submit("job" + i, progress -> {
+                release.await();
+                return null;
+            });
+        }
+
+        //when
+        ServerBusyException e = assertThrows(ServerBusyException.class,
+                () -> registry.submit("job3", progress -> null));
+
+        //then
+        assertThat(e.getMessage()).isEqualTo("Too many jobs");
+    }
+
+    private JobInfo awaitJob(String id) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        JobInfo job;
+        while ((job = registry.get(id)).getState() == State.QUEUED || job.getState() == State.RUNNING) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(1);
+        }
+        return job;
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.service.LeaseCache.Lease;
+import org.junit.jupiter.api.Test;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeaseCacheTest {
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final LeaseCache<String, Resource> cache = new LeaseCache<>(2, 0, key -> {
+        opened.incrementAndGet();
+        return new Resource(key);
+    });
+
+    @Test
+    void resourceIsReused() throws Exception {
+        //when
+        try (Lease<Resource> lease1 = cache.acquire("a", 1); Lease<Resource> lease2 = cache.acquire("a", 1)) {
+            //then
+            assertThat(lease1.get()).isSameAs(lease2.get());
+        }
+        assertThat(opened.get()).isEqualTo(1);
+    }
+
+    @Test
+    void newVersionReplacesResource() throws Exception {
+        //given
+        Resource first;
+        try (Lease<Resource> lease = cache.acquire("a", 1)) {
+            first = lease.get();
+        }
+
+        //when
+        try (Lease<Resource> lease = cache.acquire("a", 2)) {
+            //then
+            assertThat(lease.get()).isNotSameAs(first);
+        }
+        assertThat(first.closed).isTrue();
+    }
+
+    @Test
+    void evictedResourceIsClosedAfterRelease() throws Exception {
+        //given: resource in use
+        Lease<Resource> lease = cache.acquire("a", 1);
+
+        //when: it is evicted by newer entries
+        cache.acquire("b", 1).close();
+        cache.acquire("c", 1).close();
+
+        //then: it stays open until released
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(lease.get().closed).isFalse();
+        lease.close();
+        assertThat(lease.get().closed).isTrue();
+    }
+
+    @Test
+    void invalidateAndEvictIdle() throws Exception {
+        //given
+        Resource a;
+        Resource b;
+        try (Lease<Resource> leaseA = cache.acquire("a", 1); Lease<Resource> leaseB = cache.acquire("b", 1)) {
+            a = leaseA.get();
+            b = leaseB.get();
+        }
+
+        //when
+        cache.invalidate("a"::equals);
+
+        //then
+        assertThat(a.closed).isTrue();
+        assertThat(b.closed).isFalse();
+
+        //when
+        cache.evictIdle();
+
+        //then
+        assertThat(b.closed).isTrue();
+        assertThat(cache.size()).isZero();
+    }
+
+    private static class Resource implements Closeable {
+        private final String key;
+        private volatile boolean closed;
+
+        private Resource(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+}
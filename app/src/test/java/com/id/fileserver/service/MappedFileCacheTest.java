@@ -0,0 +1,127 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.service.LeaseCache.Lease;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedFileCacheTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+
+    //tiny segments, so that reads cross segment boundaries
+    private final MappedFileCache mappedFiles = new MappedFileCache(10, 4, TimeUnit.SECONDS.toNanos(60), 16);
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        FileUtils.cleanDirectory(rootPath.toFile());
+    }
+
+    @AfterEach
+    void afterEach() {
+        mappedFiles.close();
+    }
+
+    @Test
+    void readAcrossSegments() throws IOException {
+        //given
+        Path file = rootPath.resolve("file1");
+        Files.writeString(file, "0123456789".repeat(5));
+
+        //when
+        String result;
+        try (Lease<MappedFile> mapped = mappedFiles.acquire(file, attributes(file))) {
+            result = read(mapped.get(), 12, 30);
+        }
+
+        //then
+        assertThat(result).isEqualTo("234567890123456789012345678901");
+    }
+
+    @Test
+    void readPastEnd() throws IOException {
+        //given
+        Path file = rootPath.resolve("file1");
+        Files.writeString(file, "0123456789".repeat(2));
+
+        try (Lease<MappedFile> mapped = mappedFiles.acquire(file, attributes(file))) {
+            //then
+            assertThat(read(mapped.get(), 15, 10)).isEqualTo("56789");
+            assertThat(mapped.get().read(20, ByteBuffer.allocate(10))).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void appendedFileMappingIsExtended() throws IOException {
+        //given
+        Path file = rootPath.resolve("file1");
+        Files.writeString(file, "0123456789");
+        MappedFile first;
+        try (Lease<MappedFile> mapped = mappedFiles.acquire(file, attributes(file))) {
+            first = mapped.get();
+        }
+
+        //when
+        Files.writeString(file, "abc", StandardOpenOption.APPEND);
+
+        //then
+        try (Lease<MappedFile> mapped = mappedFiles.acquire(file, attributes(file))) {
+            assertThat(mapped.get()).isSameAs(first);
+            assertThat(read(mapped.get(), 8, 10)).isEqualTo("89abc");
+        }
+
+        //when: into the next segment
+        Files.writeString(file, "defghijklmn", StandardOpenOption.APPEND);
+
+        //then
+        try (Lease<MappedFile> mapped = mappedFiles.acquire(file, attributes(file))) {
+            assertThat(mapped.get()).isSameAs(first);
+            assertThat(read(mapped.get(), 8, 20)).isEqualTo("89abcdefghijklmn");
+        }
+        assertThat(mappedFiles.size()).isEqualTo(1);
+    }
+
+    @Test
+    void invalidateDirectory() throws IOException {
+        //given
+        Path dir = Files.createDirectories(rootPath.resolve("dir"));
+        Path file = dir.resolve("file1");
+        Files.writeString(file, "0123456789");
+        mappedFiles.acquire(file, attributes(file)).close();
+
+        //when
+        mappedFiles.invalidate(dir);
+
+        //then
+        assertThat(mappedFiles.size()).isZero();
+        assertThat(mappedFiles.accepts(9)).isFalse();
+        assertThat(mappedFiles.accepts(10)).isTrue();
+    }
+
+    private String read(MappedFile mapped, long position, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        mapped.read(position, buffer);
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+    }
+
+    private BasicFileAttributes attributes(Path file) throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+}
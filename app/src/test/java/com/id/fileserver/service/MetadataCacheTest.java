@@ -0,0 +1,67 @@
+package com.id.fileserver.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataCacheTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+
+    private final MetadataCache cache = new MetadataCache(100, dir -> true);
+    private BasicFileAttributes attrs;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        attrs = Files.readAttributes(rootPath, BasicFileAttributes.class);
+    }
+
+    @Test
+    void directoryChangeDropsItsTreeOnly() {
+        //given
+        for (String path : new String[]{"dir1", "dir1/file1", "dir1/dir2/file2", "dir10", "dir1-file"}) {
+            cache.put(rootPath.resolve(path), attrs, cache.stamp());
+        }
+
+        //when
+        cache.onChange(rootPath.resolve("dir1"));
+
+        //then
+        assertThat(cache.get(rootPath.resolve("dir1/file1"))).isNull();
+        assertThat(cache.get(rootPath.resolve("dir1/dir2/file2"))).isNull();
+        assertThat(cache.get(rootPath.resolve("dir10"))).isNotNull();
+        assertThat(cache.get(rootPath.resolve("dir1-file"))).isNotNull();
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void fileChangeDropsOneEntry() {
+        //given
+        cache.put(rootPath.resolve("file1"), attrs, cache.stamp());
+        cache.put(rootPath.resolve("file1/x"), attrs, cache.stamp());
+
+        //when
+        cache.invalidateFile(rootPath.resolve("file1"));
+
+        //then
+        assertThat(cache.get(rootPath.resolve("file1"))).isNull();
+        assertThat(cache.size()).isEqualTo(1);
+
+        //when
+        cache.clear();
+
+        //then
+        assertThat(cache.size()).isZero();
+    }
+
+}
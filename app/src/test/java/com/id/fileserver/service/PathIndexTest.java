@@ -0,0 +1,234 @@
+package com.id.fileserver.service;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathIndexTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+    @TempDir
+    Path indexDir;
+
+    private PathIndex index;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        FileUtils.cleanDirectory(rootPath.toFile());
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        index.close();
+    }
+
+    @Test
+    void scannedOnceThenLoaded() throws Exception {
+        //given
+        createTree();
+
+        //when: first start
+        index = start();
+
+        //then
+        assertThat(index.size()).isEqualTo(5);
+        assertThat(index.get(rootPath.resolve("dir1/dir2/file2")).size()).isEqualTo(2);
+        assertThat(index.get(rootPath.resolve("dir1/dir2")).directory()).isTrue();
+        assertThat(Files.exists(indexDir.resolve("snapshot"))).isTrue();
+
+        //when: restarted
+        index.close();
+        index = start();
+
+        //then: loaded, nothing has changed
+        assertThat(index.size()).isEqualTo(5);
+        try (Stream<Path> files = Files.list(indexDir)) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                    .containsExactlyInAnyOrder("snapshot", "log.1");
+        }
+    }
+
+    @Test
+    void changesMadeWhileStoppedAreFound() throws Exception {
+        //given
+        createTree();
+        index = start();
+        index.close();
+
+        //when: changed while not running
+        Files.createFile(rootPath.resolve("dir1/file3"));
+        Files.writeString(rootPath.resolve("dir1/file1"), "abc");
+        FileUtils.deleteDirectory(rootPath.resolve("dir1/dir2").toFile());
+        Files.createDirectories(rootPath.resolve("dir3/dir4"));
+        Files.writeString(rootPath.resolve("dir3/dir4/file4"), "abcd");
+        index = start();
+
+        //then
+        assertThat(paths()).containsExactly(
+                "dir1", "dir1/file1", "dir1/file3", "dir3", "dir3/dir4", "dir3/dir4/file4", "file0");
+        assertThat(index.get(rootPath.resolve("dir1/file1")).size()).isEqualTo(3);
+        assertThat(index.get(rootPath.resolve("dir3/dir4/file4")).size()).isEqualTo(4);
+
+        //when: restarted without changes
+        index.close();
+        index = start();
+
+        //then: verified changes were persisted
+        assertThat(paths()).containsExactly(
+                "dir1", "dir1/file1", "dir1/file3", "dir3", "dir3/dir4", "dir3/dir4/file4", "file0");
+    }
+
+    @Test
+    void changesAreReplayedAndCompacted() throws Exception {
+        //given
+        createTree();
+        index = start();
+
+        //when
+        Files.writeString(rootPath.resolve("dir1/file1"), "abcdef");
+        index.onChange(rootPath.resolve("dir1/file1"));
+        Files.createDirectories(rootPath.resolve("dir3/dir4"));
+        Files.createFile(rootPath.resolve("dir3/dir4/file4"));
+        index.onChange(rootPath.resolve("dir3"));
+        FileUtils.deleteDirectory(rootPath.resolve("dir1/dir2").toFile());
+        index.onChange(rootPath.resolve("dir1/dir2"));
+        index.close();
+        index = start();
+
+        //then
+        assertThat(paths()).containsExactly(
+                "dir1", "dir1/file1", "dir3", "dir3/dir4", "dir3/dir4/file4", "file0");
+        assertThat(index.get(rootPath.resolve("dir1/file1")).size()).isEqualTo(6);
+
+        //when
+        index.compact();
+        index.close();
+        index = start();
+
+        //then: one log left, same entries
+        try (Stream<Path> files = Files.list(indexDir)) {
+            assertThat(files.map(file -> file.getFileName().toString()))
+                    .containsExactlyInAnyOrder("snapshot", "log.2");
+        }
+        assertThat(paths()).containsExactly(
+                "dir1", "dir1/file1", "dir3", "dir3/dir4", "dir3/dir4/file4", "file0");
+    }
+
+    @Test
+    void appendsAreLoggedOncePerFile() throws Exception {
+        //given
+        createTree();
+        index = start();
+        Path file = rootPath.resolve("dir1/file1");
+        Path log = indexDir.resolve("log.1");
+
+        long time = System.currentTimeMillis() + 10_000;
+
+        //when
+        Files.writeString(file, "bcd", StandardOpenOption.APPEND);
+        index.appended(file, 2, time);
+        index.appended(file, 4, time + 2);
+        //late append of the same file
+        index.appended(file, 3, time + 1);
+
+        //then: known size and time, nothing logged yet
+        assertThat(index.get(file)).extracting(PathIndex.Entry::size, PathIndex.Entry::lastModified)
+                .containsExactly(4L, time + 2);
+        assertThat(Files.size(log)).isZero();
+
+        //when
+        index.compactIfNeeded();
+
+        //then: one record
+        assertThat(Files.size(log)).isEqualTo(4 + 18 + "dir1/file1".length());
+
+        //when
+        index.close();
+        index = start();
+
+        //then
+        assertThat(index.get(file).size()).isEqualTo(4);
+    }
+
+    @Test
+    void incompleteLogRecordIsCutOff() throws Exception {
+        //given: log ends with a part of a record (e.g. crash while writing)
+        createTree();
+        index = start();
+        Files.createFile(rootPath.resolve("file3"));
+        index.onChange(rootPath.resolve("file3"));
+        index.close();
+        Path log = indexDir.resolve("log.1");
+        long logSize = Files.size(log);
+        Files.write(log, new byte[]{0, 0, 0, 100, 1}, StandardOpenOption.APPEND);
+
+        //when
+        index = start();
+
+        //then
+        assertThat(index.get(rootPath.resolve("file3"))).isNotNull();
+        assertThat(Files.size(log)).isEqualTo(logSize);
+    }
+
+    @Test
+    void findByDepthAndGlob() throws Exception {
+        //given
+        createTree();
+        index = start();
+
+        //when
+        List<String> all = find(rootPath, "**", 0);
+        List<String> children = find(rootPath.resolve("dir1"), "*", 1);
+        List<String> files = find(rootPath.resolve("dir1"), "**file*", 0);
+
+        //then
+        assertThat(all).containsExactly("dir1", "dir1/dir2", "dir1/dir2/file2", "dir1/file1", "file0");
+        assertThat(children).containsExactly("dir1/dir2", "dir1/file1");
+        assertThat(files).containsExactly("dir1/dir2/file2", "dir1/file1");
+    }
+
+    private void createTree() throws IOException {
+        Files.createDirectories(rootPath.resolve("dir1/dir2"));
+        Files.writeString(rootPath.resolve("file0"), "");
+        Files.writeString(rootPath.resolve("dir1/file1"), "a");
+        Files.writeString(rootPath.resolve("dir1/dir2/file2"), "ab");
+    }
+
+    private PathIndex start() throws Exception {
+        PathIndex started = new PathIndex(rootPath, indexDir, true, 1 << 20);
+        started.start();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!started.isReady() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(started.isReady()).isTrue();
+        return started;
+    }
+
+    private List<String> paths() {
+        return find(rootPath, "**", 0);
+    }
+
+    private List<String> find(Path dir, String glob, int maxDepth) {
+        return index.find(dir, rootPath.getFileSystem().getPathMatcher("glob:" + glob), maxDepth)
+                .map(entry -> rootPath.relativize(entry.path()).toString())
+                .collect(Collectors.toList());
+    }
+
+}
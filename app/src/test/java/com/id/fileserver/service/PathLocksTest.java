@@ -0,0 +1,258 @@
+package com.id.fileserver.service;
+
+import com.id.fileserver.service.PathLocks.LockMode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathLocksTest {
+
+    private final PathLocks locks = new PathLocks();
+
+    @Test
+    void lockIsExclusivePerPath() throws Exception {
+        //given
+        Path path = Paths.get("file1");
+        AtomicInteger holders = new AtomicInteger();
+        AtomicInteger maxHolders = new AtomicInteger();
+
+        //when: many threads lock the same path
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1_000; i++) {
+            pool.execute(() -> {
+                try (PathLocks.Held lock = locks.lock(path, LockMode.EXCLUSIVE)) {
+                    maxHolders.accumulateAndGet(holders.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    holders.decrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        //then: one holder at a time, entry is freed after the last one
+        assertThat(maxHolders.get()).isEqualTo(1);
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void differentPathsAreIndependent() {
+        //when
+        try (PathLocks.Held lock1 = locks.lock(Paths.get("file1"), LockMode.EXCLUSIVE);
+             PathLocks.Held lock2 = locks.lock(Paths.get("file2"), LockMode.EXCLUSIVE)) {
+
+            //then
+            assertThat(locks.size()).isEqualTo(2);
+        }
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void lockIsReentrant() {
+        //when
+        Path path = Paths.get("file1");
+        try (PathLocks.Held outer = locks.lock(path, LockMode.EXCLUSIVE)) {
+            try (PathLocks.Held inner = locks.lock(path, LockMode.EXCLUSIVE)) {
+                assertThat(locks.size()).isEqualTo(1);
+            }
+            //then: still held by outer
+            assertThat(locks.size()).isEqualTo(1);
+        }
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void doubleCloseReleasesOnce() {
+        //given
+        Path path = Paths.get("file1");
+        PathLocks.Held outer = locks.lock(path, LockMode.EXCLUSIVE);
+        PathLocks.Held inner = locks.lock(path, LockMode.EXCLUSIVE);
+
+        //when
+        inner.close();
+        inner.close();
+
+        //then
+        assertThat(locks.size()).isEqualTo(1);
+        outer.close();
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void readersShareLockWithAppender() throws Exception {
+        //given
+        Path path = Paths.get("file1");
+        CountDownLatch inside = new CountDownLatch(3);
+
+        //when: two readers and an appender wait for each other inside the lock
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        for (LockMode mode : new LockMode[]{LockMode.SHARED, LockMode.SHARED, LockMode.APPEND}) {
+            pool.execute(() -> {
+                try (PathLocks.Held lock = locks.lock(path, mode)) {
+                    inside.countDown();
+                    inside.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        pool.shutdown();
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+        //then: all were inside at the same time
+        assertThat(inside.getCount()).isZero();
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void exclusiveWaitsForReaders() throws Exception {
+        //given
+        Path path = Paths.get("file1");
+        AtomicBoolean acquired = new AtomicBoolean();
+        PathLocks.Held reader = locks.lock(path, LockMode.SHARED);
+
+        //when
+        Thread writer = new Thread(() -> {
+            try (PathLocks.Held lock = locks.lock(path, LockMode.EXCLUSIVE)) {
+                acquired.set(true);
+            }
+        });
+        writer.start();
+        writer.join(200);
+
+        //then: writer gets the lock only after the reader released
+        assertThat(acquired.get()).isFalse();
+        reader.close();
+        writer.join(10_000);
+        assertThat(acquired.get()).isTrue();
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void readersDontSeeUncommittedAppend() {
+        //given
+        Path path = Paths.get("file1");
+        try (PathLocks.Held reader = locks.lock(path, LockMode.SHARED)) {
+            assertThat(reader.readableSize(100)).isEqualTo(100);
+
+            //when: append of 50 bytes is in progress
+            try (PathLocks.Held appender = locks.lock(path, LockMode.APPEND)) {
+                appender.commit(100);
+
+                //then
+                assertThat(reader.readableSize(120)).isEqualTo(100);
+                appender.commit(150);
+                assertThat(reader.readableSize(150)).isEqualTo(150);
+            }
+        }
+    }
+
+    @Test
+    void pairsAreLockedInFixedOrder() throws Exception {
+        //given
+        Path path1 = Paths.get("file1");
+        Path path2 = Paths.get("file2");
+
+        //when: pairs are locked in opposite order concurrently
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1_000; i++) {
+            boolean reversed = i % 2 == 0;
+            pool.execute(() -> {
+                try (PathLocks.Held lock = reversed
+                        ? locks.lock(path2, LockMode.EXCLUSIVE, path1, LockMode.SHARED)
+                        : locks.lock(path1, LockMode.EXCLUSIVE, path2, LockMode.SHARED)) {
+                    Thread.yield();
+                }
+            });
+        }
+        pool.shutdown();
+
+        //then: no deadlock
+        assertThat(pool.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void samePairIsLockedOnce() {
+        //when
+        Path path = Paths.get("file1");
+        try (PathLocks.Held lock = locks.lock(path, LockMode.SHARED, path, LockMode.EXCLUSIVE)) {
+
+            //then
+            assertThat(locks.size()).isEqualTo(1);
+        }
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void directoryLockExcludesDescendants() throws Exception {
+        //given
+        AtomicBoolean acquired = new AtomicBoolean();
+        PathLocks.Held directory = locks.lock(Paths.get("dir"), LockMode.EXCLUSIVE);
+
+        //when
+        Thread appender = new Thread(() -> {
+            try (PathLocks.Held lock = locks.lock(Paths.get("dir/sub/file1"), LockMode.APPEND)) {
+                acquired.set(true);
+            }
+        });
+        appender.start();
+        appender.join(200);
+
+        //then: file inside is locked only after the directory is released
+        assertThat(acquired.get()).isFalse();
+        directory.close();
+        appender.join(10_000);
+        assertThat(acquired.get()).isTrue();
+        assertThat(locks.size()).isZero();
+    }
+
+    @Test
+    void unrelatedSubtreesAreIndependent() {
+        //given
+        PathLocks rootedLocks = new PathLocks(Paths.get("/root"));
+
+        //when: subtrees share only intention locks of the root
+        try (PathLocks.Held lock1 = rootedLocks.lock(Paths.get("/root/dir1"), LockMode.EXCLUSIVE);
+             PathLocks.Held lock2 = rootedLocks.lock(Paths.get("/root/dir2/file1"), LockMode.EXCLUSIVE);
+             PathLocks.Held lock3 = rootedLocks.lock(Paths.get("/root/dir3/file1"), LockMode.SHARED)) {
+
+            //then: ancestors above the root are not locked
+            assertThat(rootedLocks.size()).isEqualTo(6);
+        }
+        assertThat(rootedLocks.size()).isZero();
+    }
+
+    @Test
+    void overlappingPairIsLockedInCoveringMode() throws Exception {
+        //given: directory read and its child changed by one operation
+        AtomicBoolean acquired = new AtomicBoolean();
+        PathLocks.Held pair = locks.lock(Paths.get("dir"), LockMode.SHARED, Paths.get("dir/copy"), LockMode.EXCLUSIVE);
+
+        //when
+        Thread reader = new Thread(() -> {
+            try (PathLocks.Held lock = locks.lock(Paths.get("dir/file1"), LockMode.SHARED)) {
+                acquired.set(true);
+            }
+        });
+        reader.start();
+        reader.join(200);
+
+        //then: directory is locked exclusively
+        assertThat(acquired.get()).isFalse();
+        pair.close();
+        reader.join(10_000);
+        assertThat(acquired.get()).isTrue();
+        assertThat(locks.size()).isZero();
+    }
+
+}
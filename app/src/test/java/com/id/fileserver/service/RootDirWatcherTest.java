@@ -0,0 +1,102 @@
+package com.id.fileserver.service;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RootDirWatcherTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+
+    private RootDirWatcher watcher;
+    private MetadataCache cache;
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        FileUtils.cleanDirectory(rootPath.toFile());
+        watcher = new RootDirWatcher(rootPath, true);
+        cache = new MetadataCache(100, watcher::isWatched);
+        watcher.addListener(cache);
+        watcher.start();
+    }
+
+    @AfterEach
+    void afterEach() throws IOException {
+        watcher.close();
+    }
+
+    @Test
+    void outsideChangeInvalidatesCache() throws Exception {
+        //given
+        Path file1 = Files.createFile(rootPath.resolve("file1"));
+        //event of the creation may come after caching, cached again until it stays
+        long deadline = System.currentTimeMillis() + 10_000;
+        do {
+            cache(file1);
+            Thread.sleep(50);
+        } while (cache.get(file1) == null && System.currentTimeMillis() < deadline);
+        assertThat(cache.get(file1)).isNotNull();
+
+        //when
+        Files.writeString(file1, "data");
+
+        //then
+        await(() -> cache.get(file1) == null);
+    }
+
+    @Test
+    void newDirectoryIsWatched() throws Exception {
+        //given
+        Path dir = Files.createDirectories(rootPath.resolve("dir1/dir2"));
+        await(() -> watcher.isWatched(dir));
+        Path file1 = Files.createFile(dir.resolve("file1"));
+        cache(file1);
+
+        //when
+        Files.delete(file1);
+
+        //then
+        await(() -> cache.get(file1) == null);
+    }
+
+    @Test
+    void unwatchedDirectoryIsNotCached() throws Exception {
+        //given
+        RootDirWatcher disabled = new RootDirWatcher(rootPath, false);
+        MetadataCache notWatched = new MetadataCache(100, disabled::isWatched);
+        Path file1 = Files.createFile(rootPath.resolve("file1"));
+
+        //when
+        notWatched.put(file1, Files.readAttributes(file1, BasicFileAttributes.class), notWatched.stamp());
+
+        //then
+        assertThat(notWatched.get(file1)).isNull();
+    }
+
+    private void cache(Path path) throws IOException {
+        long stamp = cache.stamp();
+        cache.put(path, Files.readAttributes(path, BasicFileAttributes.class), stamp);
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+}
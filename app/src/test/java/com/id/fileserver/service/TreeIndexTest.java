@@ -0,0 +1,133 @@
+package com.id.fileserver.service;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TreeIndexTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        FileUtils.cleanDirectory(rootPath.toFile());
+    }
+
+    @Test
+    void outsideChangesFromWatcher() throws IOException {
+        //given
+        TreeIndex index = new TreeIndex(100);
+        Path dir1 = rootPath.resolve("dir1");
+        Path dir = Files.createDirectories(dir1.resolve("dir2"));
+        Files.writeString(dir.resolve("file1"), "abc");
+        assertThat(index.summary(dir1)).isEqualTo(new TreeIndex.Totals(3, 1, 1, newest(dir1)));
+
+        //when
+        Path file2 = Files.writeString(dir.resolve("file2"), "de");
+        index.onChange(file2);
+        index.onChange(dir);
+
+        //then
+        assertThat(index.summary(dir1)).isEqualTo(new TreeIndex.Totals(5, 2, 1, newest(dir1)));
+        assertThat(index.summary(dir)).isEqualTo(new TreeIndex.Totals(5, 2, 0, newest(dir)));
+
+        //when: directory deleted outside
+        FileUtils.deleteDirectory(dir.toFile());
+        index.onChange(dir);
+
+        //then
+        assertThat(index.summary(dir1).files()).isZero();
+        assertThat(index.size()).isEqualTo(1);
+
+        //when
+        index.onReset();
+
+        //then
+        assertThat(index.size()).isZero();
+    }
+
+    @Test
+    void newestTimeAfterRemove() throws IOException {
+        //given
+        TreeIndex index = new TreeIndex(100);
+        Path dir = Files.createDirectories(rootPath.resolve("dir1"));
+        Path file1 = Files.writeString(dir.resolve("file1"), "abc");
+        Path file2 = Files.writeString(dir.resolve("file2"), "de");
+        Files.setLastModifiedTime(file1, FileTime.from(Instant.parse("2020-01-01T00:00:00Z")));
+        Files.setLastModifiedTime(file2, FileTime.from(Instant.parse("2020-01-02T00:00:00Z")));
+        Files.setLastModifiedTime(dir, FileTime.from(Instant.parse("2019-01-01T00:00:00Z")));
+        assertThat(index.summary(dir).lastModified()).isEqualTo(Instant.parse("2020-01-02T00:00:00Z").toEpochMilli());
+
+        //when: removed by the service, without touching the directory time
+        Files.delete(file2);
+        Files.setLastModifiedTime(dir, FileTime.from(Instant.parse("2019-01-01T00:00:00Z")));
+        index.remove(file2);
+
+        //then: next newest time is found
+        assertThat(index.summary(dir).lastModified()).isEqualTo(Instant.parse("2020-01-01T00:00:00Z").toEpochMilli());
+    }
+
+    @Test
+    void appendedWithKnownSize() throws IOException {
+        //given
+        TreeIndex index = new TreeIndex(100);
+        Path dir1 = rootPath.resolve("dir1");
+        Path dir = Files.createDirectories(dir1.resolve("dir2"));
+        Path file1 = Files.writeString(dir.resolve("file1"), "abc");
+        Files.writeString(dir1.resolve("file2"), "de");
+        long time = Instant.parse("2030-01-01T00:00:00Z").toEpochMilli();
+        index.summary(dir1);
+
+        //when: file is not read, a late append doesn't make it smaller
+        index.appended(file1, 10, time);
+        index.appended(file1, 8, time - 1);
+
+        //then
+        assertThat(index.summary(dir1)).isEqualTo(new TreeIndex.Totals(12, 2, 1, time));
+        assertThat(index.summary(dir)).isEqualTo(new TreeIndex.Totals(10, 1, 0, time));
+
+        //when: newest file removed
+        Files.delete(file1);
+        index.remove(file1);
+
+        //then
+        assertThat(index.summary(dir1)).isEqualTo(new TreeIndex.Totals(2, 1, 1, newest(dir1)));
+    }
+
+    @Test
+    void treeOverLimitIsNotKept() throws IOException {
+        //given
+        TreeIndex index = new TreeIndex(2);
+        Path dir = Files.createDirectories(rootPath.resolve("dir1"));
+        Files.writeString(dir.resolve("file1"), "abc");
+        Files.writeString(dir.resolve("file2"), "de");
+
+        //when
+        TreeIndex.Totals totals = index.summary(dir);
+
+        //then: tree was walked
+        assertThat(totals.size()).isEqualTo(5);
+        assertThat(totals.files()).isEqualTo(2);
+        assertThat(index.size()).isZero();
+    }
+
+    /**
+     * Newest modification time in a tree, walked
+     */
+    private long newest(Path dir) throws IOException {
+        return new TreeIndex(0).summary(dir).lastModified();
+    }
+
+}
@@ -0,0 +1,205 @@
+package com.id.fileserver.service;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TreeOperationsTest {
+
+    private final Path rootPath = Paths.get("./unit-root-dir").toAbsolutePath().normalize();
+
+    private final FileCopier fileCopier = new FileCopier(Paths.get("./target/unit-copy-staging"));
+
+    private final TreeOperations treeOperations = new TreeOperations(4, fileCopier);
+
+    @BeforeEach
+    void beforeEach() throws IOException {
+        if (!Files.exists(rootPath)) {
+            Files.createDirectories(rootPath);
+        }
+        FileUtils.cleanDirectory(rootPath.toFile());
+        fileCopier.start();
+    }
+
+    @AfterEach
+    void afterEach() {
+        treeOperations.close();
+    }
+
+    @Test
+    void copyTree() throws Exception {
+        //given: 3 levels, 2 subdirectories and 3 files in every directory
+        Path source = rootPath.resolve("source");
+        createTree(source, 3);
+        FileTime time = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+        Files.setLastModifiedTime(source, time);
+        Files.setLastModifiedTime(source.resolve("dir1"), time);
+        Path target = rootPath.resolve("target");
+
+        //when
+        TreeProgress progress = new TreeProgress();
+        treeOperations.copy(source, target, progress);
+
+        //then
+        assertThat(progress.directories()).isEqualTo(1 + 2 + 4);
+        assertThat(progress.files()).isEqualTo(7 * 3);
+        assertThat(progress.bytes()).isEqualTo(7 * (1 + 2 + 3));
+        assertThat(Files.readString(target.resolve("dir1/dir0/file2"))).isEqualTo("222");
+        assertThat(Files.getLastModifiedTime(target.resolve("file0")))
+                .isEqualTo(Files.getLastModifiedTime(source.resolve("file0")));
+        //directory times are set after their content is copied
+        assertThat(Files.getLastModifiedTime(target)).isEqualTo(time);
+        assertThat(Files.getLastModifiedTime(target.resolve("dir1"))).isEqualTo(time);
+    }
+
+    @Test
+    void copyLinksAsLinks() throws Exception {
+        //given: link loop and link to a directory outside of the tree
+        Path source = rootPath.resolve("source");
+        createTree(source, 2);
+        Path outside = Files.createDirectories(rootPath.resolve("outside"));
+        Files.writeString(outside.resolve("secret"), "x");
+        Files.createSymbolicLink(source.resolve("loop"), source);
+        Files.createSymbolicLink(source.resolve("dir0/outside"), outside);
+        Path target = rootPath.resolve("target");
+
+        //when
+        TreeProgress progress = new TreeProgress();
+        treeOperations.copy(source, target, progress);
+
+        //then
+        assertThat(Files.readSymbolicLink(target.resolve("loop"))).isEqualTo(source);
+        assertThat(Files.readSymbolicLink(target.resolve("dir0/outside"))).isEqualTo(outside);
+        assertThat(progress.directories()).isEqualTo(3);
+    }
+
+    @Test
+    void copyIntoItself() throws Exception {
+        //given
+        Path source = rootPath.resolve("source");
+        createTree(source, 1);
+
+        //when
+        IOException e = assertThrows(IOException.class,
+                () -> treeOperations.copy(source, source.resolve("inner"), new TreeProgress()));
+
+        //then
+        assertThat(e.getMessage()).startsWith("Target is inside source");
+    }
+
+    @Test
+    void deleteTree() throws Exception {
+        //given
+        Path dir = rootPath.resolve("dir");
+        createTree(dir, 3);
+        Files.createSymbolicLink(dir.resolve("link"), rootPath);
+
+        //when
+        TreeProgress progress = new TreeProgress();
+        treeOperations.delete(dir, progress);
+
+        //then: link is deleted, not followed
+        assertThat(dir).doesNotExist();
+        assertThat(rootPath).exists();
+        assertThat(progress.directories()).isEqualTo(7);
+        assertThat(progress.files()).isEqualTo(7 * 3 + 1);
+    }
+
+    @Test
+    void missingSource() {
+        //when
+        Path source = rootPath.resolve("missing");
+
+        //then: original exception
+        assertThrows(NoSuchFileException.class,
+                () -> treeOperations.copy(source, rootPath.resolve("target"), new TreeProgress()));
+    }
+
+    @Test
+    void cancelled() throws Exception {
+        //given
+        Path dir = rootPath.resolve("dir");
+        createTree(dir, 2);
+        TreeProgress progress = new TreeProgress();
+        progress.cancel();
+
+        //then
+        assertThrows(CancellationException.class, () -> treeOperations.delete(dir, progress));
+        assertThat(dir).exists();
+    }
+
+    @Test
+    void findInTree() throws Exception {
+        //given
+        Path dir = rootPath.resolve("dir");
+        createTree(dir, 3);
+        PathMatcher file1 = path -> path.getFileName().toString().equals("file1");
+
+        //when
+        List<Path> all = find(dir, file1, 0, 100);
+        List<Path> shallow = find(dir, file1, 2, 100);
+        List<Path> limited = find(dir, file1, 0, 2);
+
+        //then
+        assertThat(all).hasSize(7).contains(dir.resolve("file1"), dir.resolve("dir1/dir0/file1"));
+        assertThat(shallow).containsExactlyInAnyOrder(
+                dir.resolve("file1"), dir.resolve("dir0/file1"), dir.resolve("dir1/file1"));
+        assertThat(limited).hasSize(2).isSubsetOf(all);
+    }
+
+    @Test
+    void findStopsWhenClosed() throws Exception {
+        //given: more paths than fit in the queue
+        Path dir = rootPath.resolve("dir");
+        createTree(dir, 3);
+        for (int i = 0; i < 2000; i++) {
+            Files.createFile(dir.resolve("dir0/extra" + i));
+        }
+
+        //when: only the first path is read
+        Path first;
+        try (Stream<TreeOperations.Found> found = treeOperations.find(dir, path -> true, 0, Integer.MAX_VALUE)) {
+            first = found.findFirst().orElseThrow().path();
+        }
+
+        //then: the walk doesn't block the pool
+        assertThat(first).startsWith(dir);
+        assertThat(find(dir, path -> path.getFileName().toString().startsWith("extra"), 0, 3000)).hasSize(2000);
+    }
+
+    private List<Path> find(Path dir, PathMatcher matcher, int maxDepth, int limit) {
+        try (Stream<TreeOperations.Found> found = treeOperations.find(dir, matcher, maxDepth, limit)) {
+            return found.map(TreeOperations.Found::path).collect(Collectors.toList());
+        }
+    }
+
+    private void createTree(Path dir, int depth) throws IOException {
+        Files.createDirectories(dir);
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(dir.resolve("file" + i), String.valueOf(i).repeat(i + 1));
+        }
+        if (depth > 1) {
+            for (int i = 0; i < 2; i++) {
+                createTree(dir.resolve("dir" + i), depth - 1);
+            }
+        }
+    }
+
+}
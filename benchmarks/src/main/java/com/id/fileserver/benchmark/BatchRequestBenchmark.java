@@ -0,0 +1,90 @@
+package com.id.fileserver.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.id.fileserver.endpoint.BatchJsonRpcServer;
+import com.id.fileserver.endpoint.FileApi;
+import com.id.fileserver.endpoint.FileEndpoint;
+import com.id.fileserver.service.JobRegistry;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a JSON-RPC batch of getFileInfo calls executed serially versus in parallel.
+ * <p>
+ * Gain of parallel execution grows with the number of cores and with storage latency (e.g. network file system);
+ * on a single core only its overhead is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchRequestBenchmark {
+
+    @Param({"10", "500"})
+    private int batchSize;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private Path rootPath;
+    private JobRegistry jobRegistry;
+    private BatchJsonRpcServer server;
+    private byte[] request;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        rootPath = Files.createTempDirectory("batch-benchmark").toAbsolutePath().normalize();
+        ObjectMapper mapper = new ObjectMapper();
+        ArrayNode batch = mapper.createArrayNode();
+        for (int i = 0; i < batchSize; i++) {
+            Files.writeString(rootPath.resolve("file" + i), "0123456789");
+            ObjectNode call = batch.addObject();
+            call.put("jsonrpc", "2.0");
+            call.put("id", i);
+            call.put("method", "getFileInfo");
+            call.putObject("params").put("path", "file" + i);
+        }
+        request = mapper.writeValueAsBytes(batch);
+
+        jobRegistry = new JobRegistry(1, 1);
+        FileEndpoint endpoint = new FileEndpoint(BenchmarkFileService.create(rootPath, false), jobRegistry);
+        server = new BatchJsonRpcServer(mapper, endpoint, FileApi.class, batchSize, parallel);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        jobRegistry.close();
+        FileUtils.deleteDirectory(rootPath.toFile());
+    }
+
+    @Benchmark
+    public int getFileInfoBatch() throws IOException {
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        server.handleRequest(new ByteArrayInputStream(request), response);
+        return response.size();
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.id.fileserver.benchmark;
+
+import com.id.fileserver.service.AppendBatcher;
+import com.id.fileserver.service.BlockCache;
+import com.id.fileserver.service.BufferPool;
+import com.id.fileserver.service.FileChannelCache;
+import com.id.fileserver.service.FileCopier;
+import com.id.fileserver.service.FileGrep;
+import com.id.fileserver.service.FileServiceImpl;
+import com.id.fileserver.service.FileServiceLimits;
+import com.id.fileserver.service.FileWaiters;
+import com.id.fileserver.service.MappedFileCache;
+import com.id.fileserver.service.MetadataCache;
+import com.id.fileserver.service.PathIndex;
+import com.id.fileserver.service.PathLocks;
+import com.id.fileserver.service.TreeIndex;
+import com.id.fileserver.service.TreeOperations;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File service wired like the application, without Spring
+ */
+final class BenchmarkFileService {
+
+    private BenchmarkFileService() {
+    }
+
+    /**
+     * @param rootPath       root directory
+     * @param metadataCached whether metadata cache and tree index are enabled
+     */
+    static FileServiceImpl create(Path rootPath, boolean metadataCached) throws IOException {
+        PathLocks fileLocks = new PathLocks(rootPath);
+        FileChannelCache channelCache = new FileChannelCache(256, TimeUnit.SECONDS.toNanos(60));
+        FileCopier fileCopier = new FileCopier(rootPath.resolveSibling("copy-staging"));
+        fileCopier.start();
+        return new FileServiceImpl(
+                rootPath,
+                fileLocks,
+                new BufferPool(64 * 1024, 16, true),
+                new BufferPool(64 * 1024, 32, false),
+                new FileServiceLimits(1024 * 1024, 1000, 60_000),
+                channelCache,
+                new MappedFileCache(Long.MAX_VALUE, 32, TimeUnit.SECONDS.toNanos(60), 1 << 30),
+                new BlockCache(0, 64 * 1024),
+                new MetadataCache(metadataCached ? 100_000 : 0, dir -> true),
+                new AppendBatcher(fileLocks, channelCache, 1024 * 1024, 0),
+                new TreeOperations(4, fileCopier),
+                fileCopier,
+                new TreeIndex(metadataCached ? 1_000_000 : 0),
+                new PathIndex(rootPath, rootPath.resolveSibling("path-index"), false, 0),
+                new FileGrep(1024 * 1024, 10_000, 4),
+                new FileWaiters(1000));
+    }
+
+}
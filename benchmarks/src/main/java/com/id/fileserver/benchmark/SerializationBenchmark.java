@@ -0,0 +1,115 @@
+package com.id.fileserver.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.id.fileserver.model.FileInfo;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of encoding (server) and decoding (client) of JSON-RPC responses: indented JSON (app default),
+ * compact JSON and CBOR. Payload size of every combination is logged at setup.
+ * <p>
+ * Binary data is base64 text in JSON, but a byte string in CBOR.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(SerializationBenchmark.class);
+
+    @Param({"json-indented", "json", "cbor"})
+    private String format;
+
+    @Param({"listDirectory", "readFromFile", "readBytesFromFile"})
+    private String method;
+
+    private ObjectMapper mapper;
+    private Map<String, Object> response;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mapper = switch (format) {
+            case "json-indented" -> new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+            case "json" -> new ObjectMapper();
+            case "cbor" -> new ObjectMapper(new CBORFactory());
+            default -> throw new IllegalArgumentException("Unknown format: " + format);
+        };
+
+        response = new LinkedHashMap<>();
+        response.put("jsonrpc", "2.0");
+        response.put("id", 1);
+        response.put("result", result());
+        encoded = mapper.writeValueAsBytes(response);
+        log.info("{} {} payload: {} bytes", format, method, encoded.length);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        return mapper.writeValueAsBytes(response).length;
+    }
+
+    @Benchmark
+    public JsonNode decode() throws IOException {
+        return mapper.readTree(encoded);
+    }
+
+    private Object result() {
+        Random random = new Random(1);
+        return switch (method) {
+            case "listDirectory" -> {
+                List<FileInfo> children = new ArrayList<>();
+                for (int i = 0; i < 1_000; i++) {
+                    children.add(FileInfo.builder()
+                            .name("file" + i)
+                            .path("some/directory/file" + i)
+                            .size(random.nextInt(1 << 20))
+                            .isDirectory(i % 10 == 0)
+                            .build());
+                }
+                yield children;
+            }
+            case "readFromFile" -> {
+                StringBuilder text = new StringBuilder();
+                while (text.length() < 64 * 1024) {
+                    text.append("line ").append(random.nextInt()).append('\n');
+                }
+                yield text.toString();
+            }
+            case "readBytesFromFile" -> {
+                byte[] data = new byte[64 * 1024];
+                random.nextBytes(data);
+                yield data;
+            }
+            default -> throw new IllegalArgumentException("Unknown method: " + method);
+        };
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.id.fileserver.benchmark;
+
+import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.service.FileServiceImpl;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of request validation: separate exists/type/attributes stats (former pipeline)
+ * versus one attribute read, and the service operations built on it.
+ * <p>
+ * Syscalls per operation can be seen with {@code -prof perfnorm} or by running under {@code strace -c -f}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StatPipelineBenchmark {
+
+    @Param({"false", "true"})
+    private boolean metadataCached;
+
+    private Path rootPath;
+    private Path file;
+    private FileServiceImpl service;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        rootPath = Files.createTempDirectory("stat-benchmark").toAbsolutePath().normalize();
+        file = Files.writeString(rootPath.resolve("file1"), "0123456789");
+        Files.createDirectories(rootPath.resolve("dir1"));
+        service = BenchmarkFileService.create(rootPath, metadataCached);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(rootPath.toFile());
+    }
+
+    @Benchmark
+    public BasicFileAttributes separateStats() throws IOException {
+        if (!Files.exists(file) || !Files.isRegularFile(file)) {
+            throw new IllegalStateException();
+        }
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    @Benchmark
+    public BasicFileAttributes singleStat() throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        if (!attrs.isRegularFile()) {
+            throw new IllegalStateException();
+        }
+        return attrs;
+    }
+
+    @Benchmark
+    public FileInfo getFileInfo() throws IOException {
+        return service.getFileInfo("file1");
+    }
+
+    @Benchmark
+    public FileInfo createAndDeleteFile() throws IOException {
+        FileInfo info = service.createFile("dir1/file2");
+        service.deleteFile("dir1/file2");
+        return info;
+    }
+
+    @Benchmark
+    public FileInfo moveFileBackAndForth() throws IOException {
+        service.moveFile("file1", "dir1/file1");
+        return service.moveFile("dir1/file1", "file1");
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.id.fileserver.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchRequestsIT extends BaseApiIT {
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void readOnlyBatch() throws Throwable {
+        //given
+        ArrayNode batch = objectMapper.createArrayNode();
+        for (int i = 0; i < 200; i++) {
+            Files.writeString(rootPath.resolve("file" + i), "x".repeat(i));
+            batch.add(request(i, "getFileInfo", Map.of("path", "file" + i)));
+        }
+
+        //when
+        JsonNode result = post(batch);
+
+        //then: responses are in order of requests
+        assertThat(result.size()).isEqualTo(200);
+        for (int i = 0; i < 200; i++) {
+            assertThat(result.get(i).get("id").asInt()).isEqualTo(i);
+            assertThat(result.get(i).get("result").get("name").asText()).isEqualTo("file" + i);
+            assertThat(result.get(i).get("result").get("size").asLong()).isEqualTo(i);
+        }
+    }
+
+    @Test
+    void callsOfSamePathAreOrdered() throws Throwable {
+        for (int round = 0; round < 20; round++) {
+            //given
+            cleanRootDir();
+            ArrayNode batch = objectMapper.createArrayNode();
+            batch.add(request(0, "createDirectory", Map.of("path", "dir" + round)));
+            batch.add(request(1, "createFile", Map.of("path", "dir" + round + "/file1")));
+            for (int i = 0; i < 10; i++) {
+                batch.add(request(2 + i, "appendToFile", Map.of("path", "dir" + round + "/file1", "data", "" + i)));
+                //unrelated calls in between
+                batch.add(request(100 + i, "getFileInfo", Map.of("path", ".")));
+            }
+            batch.add(request(12, "readFromFile", Map.of("path", "dir" + round + "/./file1", "offset", 0, "length", 10)));
+            batch.add(request(13, "deleteDirectory", Map.of("path", "dir" + round)));
+            batch.add(request(14, "getFileInfo", Map.of("path", "dir" + round + "/file1")));
+
+            //when
+            JsonNode result = post(batch);
+
+            //then: same results as of serial execution
+            assertThat(result.get(result.size() - 3).get("result").asText()).isEqualTo("0123456789");
+            assertThat(result.get(result.size() - 2).has("error")).isFalse();
+            assertThat(result.get(result.size() - 1).get("error").get("message").asText())
+                    .contains("NoSuchFileException");
+        }
+    }
+
+    @Test
+    void errorsOfSingleCalls() throws Throwable {
+        //given
+        Files.createFile(rootPath.resolve("file1"));
+        ArrayNode batch = objectMapper.createArrayNode();
+        batch.add(request(1, "getFileInfo", Map.of("path", "file1")));
+        batch.add(request(2, "getFileInfo", Map.of("path", "unknown")));
+        batch.add(request(3, "unknownMethod", Map.of()));
+
+        //when
+        JsonNode result = post(batch);
+
+        //then
+        assertThat(result.get(0).get("result").get("name").asText()).isEqualTo("file1");
+        assertThat(result.get(1).get("error").get("code").asInt()).isEqualTo(-32001);
+        assertThat(result.get(2).get("error").get("code").asInt()).isEqualTo(-32601);
+    }
+
+    @Test
+    void batchTooLarge() throws Throwable {
+        //given
+        ArrayNode batch = objectMapper.createArrayNode();
+        for (int i = 0; i < 1001; i++) {
+            batch.add(request(i, "getFileInfo", Map.of("path", ".")));
+        }
+
+        //when
+        JsonNode result = post(batch);
+
+        //then
+        assertThat(result.get("error").get("code").asInt()).isEqualTo(-32600);
+        assertThat(result.get("error").get("message").asText()).isEqualTo("Batch too large");
+    }
+
+    private ObjectNode request(int id, String method, Map<String, Object> params) {
+        ObjectNode request = objectMapper.createObjectNode();
+        request.put("jsonrpc", "2.0");
+        request.put("id", id);
+        request.put("method", method);
+        request.set("params", objectMapper.valueToTree(params));
+        return request;
+    }
+
+    private JsonNode post(JsonNode body) throws Throwable {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        String response = restTemplate.postForObject(
+                getUrl(), new HttpEntity<>(objectMapper.writeValueAsString(body), headers), String.class);
+        return objectMapper.readTree(response);
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.id.fileserver.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import com.googlecode.jsonrpc4j.JsonRpcHttpClient;
+import com.id.fileserver.model.FileInfo;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This test verifies the JSON-RPC API served in CBOR when requested by content type.
+ */
+public class CborTransportIT extends BaseApiIT {
+
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+
+    @Test
+    void callsInCbor() throws Throwable {
+        //given
+        Files.writeString(rootPath.resolve("file1"), "0123456789");
+        JsonRpcHttpClient client = new JsonRpcHttpClient(cborMapper, new URI(getUrl()).toURL(), Map.of());
+        client.setContentType("application/cbor");
+
+        //when
+        FileInfo info = client.invoke("getFileInfo", Map.of("path", "file1"), FileInfo.class);
+        FileInfo[] children = client.invoke("listDirectory", Map.of("path", ""), FileInfo[].class);
+        byte[] data = client.invoke(
+                "readBytesFromFile", Map.of("path", "file1", "offset", 2, "length", 3), byte[].class);
+
+        //then
+        assertThat(info.getSize()).isEqualTo(10);
+        assertThat(children).extracting(FileInfo::getName).containsExactly("file1");
+        assertThat(data).isEqualTo("234".getBytes(StandardCharsets.UTF_8));
+
+        //when: error
+        JsonRpcClientException thrown = assertThrows(
+                JsonRpcClientException.class,
+                () -> client.invoke("getFileInfo", Map.of("path", "unknown"), FileInfo.class));
+
+        //then
+        checkFileNotExists(thrown);
+    }
+
+    @Test
+    void responseIsInFormatOfRequest() throws Exception {
+        //given
+        Files.writeString(rootPath.resolve("file1"), "0123456789");
+        ObjectNode call = cborMapper.createObjectNode();
+        call.put("jsonrpc", "2.0");
+        call.put("id", 1);
+        call.put("method", "getFileInfo");
+        call.putObject("params").put("path", "file1");
+        HttpClient httpClient = HttpClient.newHttpClient();
+
+        //when
+        HttpResponse<byte[]> cbor = httpClient.send(HttpRequest.newBuilder(new URI(getUrl()))
+                        .header("Content-Type", "application/cbor")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(cborMapper.writeValueAsBytes(call)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+        HttpResponse<byte[]> json = httpClient.send(HttpRequest.newBuilder(new URI(getUrl()))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(new ObjectMapper().writeValueAsBytes(call)))
+                        .build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+
+        //then: same result, binary one is smaller
+        assertThat(cbor.headers().firstValue("Content-Type")).hasValueSatisfying(
+                value -> assertThat(value).startsWith("application/cbor"));
+        JsonNode cborResult = cborMapper.readTree(cbor.body()).get("result");
+        JsonNode jsonResult = new ObjectMapper().readTree(json.body()).get("result");
+        assertThat(cborResult).isEqualTo(jsonResult);
+        assertThat(cbor.body().length).isLessThan(json.body().length);
+    }
+
+}
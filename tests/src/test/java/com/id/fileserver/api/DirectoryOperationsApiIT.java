@@ -1,7 +1,11 @@
 package com.id.fileserver.api;
 
 import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import com.id.fileserver.model.DirectoryPage;
 import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.GrepMatch;
+import com.id.fileserver.model.GrepResult;
+import com.id.fileserver.model.TreeSummary;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
@@ -11,9 +15,12 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class DirectoryOperationsApiIT extends BaseApiIT {
@@ -91,6 +98,185 @@ public class DirectoryOperationsApiIT extends BaseApiIT {
         assertThat(result).containsExactlyInAnyOrder(expectedDir, expectedFile);
     }
 
+    @Test
+    void listDirectoryPage() throws Throwable {
+        //given
+        Path dir1 = Files.createDirectories(rootPath.resolve("dir1"));
+        for (int i = 0; i < 5; i++) {
+            Files.createFile(dir1.resolve("file" + i));
+        }
+
+        //when: first page, without cursor
+        Map<String, Object> params = new HashMap<>();
+        params.put("path", "dir1");
+        params.put("limit", 3);
+        params.put("cursor", null);
+        DirectoryPage first = getClient().invoke("listDirectoryPage", params, DirectoryPage.class);
+
+        //then
+        assertThat(first.getEntries()).hasSize(3);
+        assertThat(first.getNextCursor()).isNotNull();
+
+        //when
+        DirectoryPage second = getClient().invoke(
+                "listDirectoryPage",
+                Map.of("path", "dir1", "limit", 3, "cursor", first.getNextCursor()),
+                DirectoryPage.class);
+
+        //then
+        assertThat(second.getEntries()).hasSize(2);
+        assertThat(second.getNextCursor()).isNull();
+        List<String> names = Stream.concat(first.getEntries().stream(), second.getEntries().stream())
+                .map(FileInfo::getName)
+                .toList();
+        assertThat(names).containsExactlyInAnyOrder("file0", "file1", "file2", "file3", "file4");
+    }
+
+    @Test
+    void listDirectoryPageArgError() throws Throwable {
+        //given
+        Files.createDirectories(rootPath.resolve("dir1"));
+
+        //when
+        JsonRpcClientException thrown = assertThrows(
+                JsonRpcClientException.class,
+                () -> getClient().invoke(
+                        "listDirectoryPage", Map.of("path", "dir1", "limit", 0, "cursor", ""), DirectoryPage.class));
+
+        //then
+        assertThat(thrown.getCode()).isEqualTo(-32098);
+        assertThat(thrown).hasMessageContaining("Invalid limit");
+
+        //when
+        thrown = assertThrows(
+                JsonRpcClientException.class,
+                () -> getClient().invoke(
+                        "listDirectoryPage",
+                        Map.of("path", "dir1", "limit", 10, "cursor", "not a cursor"),
+                        DirectoryPage.class));
+
+        //then
+        assertThat(thrown.getCode()).isEqualTo(-32098);
+        assertThat(thrown).hasMessageContaining("Invalid cursor");
+    }
+
+    @Test
+    void find() throws Throwable {
+        //given
+        Files.createDirectories(rootPath.resolve("dir1/logs/old"));
+        Files.createFile(rootPath.resolve("dir1/app.log"));
+        Files.createFile(rootPath.resolve("dir1/logs/app.log"));
+        Files.createFile(rootPath.resolve("dir1/logs/old/app.log"));
+        Files.createFile(rootPath.resolve("dir1/logs/app.txt"));
+
+        //when
+        FileInfo[] byName = getClient().invoke(
+                "find", Map.of("path", "dir1", "glob", "*.log", "maxDepth", 0, "limit", 100), FileInfo[].class);
+        FileInfo[] byPath = getClient().invoke(
+                "find", Map.of("path", "dir1", "glob", "logs/*", "maxDepth", 0, "limit", 100), FileInfo[].class);
+        FileInfo[] shallow = getClient().invoke(
+                "find", Map.of("path", "dir1", "glob", "*.log", "maxDepth", 2, "limit", 100), FileInfo[].class);
+        FileInfo[] limited = getClient().invoke(
+                "find", Map.of("path", "dir1", "glob", "*", "maxDepth", 0, "limit", 2), FileInfo[].class);
+
+        //then
+        assertThat(byName).extracting(FileInfo::getPath)
+                .containsExactlyInAnyOrder("dir1/app.log", "dir1/logs/app.log", "dir1/logs/old/app.log");
+        assertThat(byPath).extracting(FileInfo::getPath)
+                .containsExactlyInAnyOrder("dir1/logs/app.log", "dir1/logs/app.txt", "dir1/logs/old");
+        assertThat(shallow).extracting(FileInfo::getPath)
+                .containsExactlyInAnyOrder("dir1/app.log", "dir1/logs/app.log");
+        assertThat(limited).hasSize(2);
+    }
+
+    @Test
+    void findArgError() {
+        //when
+        JsonRpcClientException thrown = assertThrows(
+                JsonRpcClientException.class,
+                () -> getClient().invoke(
+                        "find", Map.of("path", ".", "glob", "*", "maxDepth", 0, "limit", 100_000), FileInfo[].class)
+        );
+
+        //then
+        assertThat(thrown.getCode()).isEqualTo(-32098);
+        assertThat(thrown).hasMessageContaining("Invalid limit");
+    }
+
+    @Test
+    void grep() throws Throwable {
+        //given
+        Files.createDirectories(rootPath.resolve("dir1/logs"));
+        Files.writeString(rootPath.resolve("dir1/app.log"), "started\nERROR disk full\nstopped\n");
+        Files.writeString(rootPath.resolve("dir1/logs/app.log"), "ERROR 1\nERROR 2\n");
+
+        //when
+        GrepResult inTree = getClient().invoke(
+                "grep", Map.of("path", "dir1", "pattern", "ERROR \\w+", "maxMatches", 10), GrepResult.class);
+        GrepResult limited = getClient().invoke(
+                "grep", Map.of("path", "dir1/logs/app.log", "pattern", "ERROR", "maxMatches", 1), GrepResult.class);
+
+        //then
+        assertThat(inTree.isComplete()).isTrue();
+        assertThat(inTree.getMatches()).extracting(GrepMatch::getPath, GrepMatch::getLine)
+                .containsExactlyInAnyOrder(tuple("dir1/app.log", "ERROR disk full"),
+                        tuple("dir1/logs/app.log", "ERROR 1"), tuple("dir1/logs/app.log", "ERROR 2"));
+        assertThat(limited.isComplete()).isFalse();
+        assertThat(limited.getMatches()).extracting(GrepMatch::getLine).containsExactly("ERROR 1");
+
+        //when: matching line is read by its offset
+        GrepMatch match = inTree.getMatches().stream()
+                .filter(found -> found.getPath().equals("dir1/app.log")).findFirst().orElseThrow();
+        String line = getClient().invoke("readFromFile",
+                Map.of("path", match.getPath(), "offset", match.getOffset(), "length", 15), String.class);
+
+        //then
+        assertThat(line).isEqualTo("ERROR disk full");
+    }
+
+    @Test
+    void grepArgError() {
+        //when
+        JsonRpcClientException thrown = assertThrows(
+                JsonRpcClientException.class,
+                () -> getClient().invoke(
+                        "grep", Map.of("path", ".", "pattern", "[", "maxMatches", 10), GrepResult.class)
+        );
+
+        //then
+        assertThat(thrown.getCode()).isEqualTo(-32098);
+        assertThat(thrown).hasMessageContaining("Invalid pattern");
+    }
+
+    @Test
+    void getTreeSummary() throws Throwable {
+        //given
+        Files.createDirectories(rootPath.resolve("dir1/dir2/dir3"));
+        Files.writeString(rootPath.resolve("dir1/file1"), "abc");
+        Files.writeString(rootPath.resolve("dir1/dir2/dir3/file2"), "de");
+
+        //when
+        TreeSummary result = getClient().invoke("getTreeSummary", Map.of("path", "dir1"), TreeSummary.class);
+
+        //then
+        assertThat(result.getPath()).isEqualTo("dir1");
+        assertThat(result.getSize()).isEqualTo(5);
+        assertThat(result.getFileCount()).isEqualTo(2);
+        assertThat(result.getDirectoryCount()).isEqualTo(2);
+        assertThat(result.getLastModified())
+                .isEqualTo(Files.getLastModifiedTime(rootPath.resolve("dir1/dir2/dir3/file2")).toMillis());
+
+        //when: changed through the api
+        getClient().invoke("appendToFile", Map.of("path", "dir1/file1", "data", "fgh"), Object.class);
+        getClient().invoke("deleteDirectory", Map.of("path", "dir1/dir2/dir3"), Object.class);
+        result = getClient().invoke("getTreeSummary", Map.of("path", "dir1"), TreeSummary.class);
+
+        //then
+        assertThat(result.getSize()).isEqualTo(6);
+        assertThat(result.getFileCount()).isEqualTo(1);
+        assertThat(result.getDirectoryCount()).isEqualTo(1);
+    }
+
     @Test
     void createDirectory() throws Throwable {
         //when
@@ -193,7 +379,7 @@ public class DirectoryOperationsApiIT extends BaseApiIT {
 
     @ParameterizedTest(name = "{0}")
     @ValueSource(strings = {
-            "listDirectory", "deleteDirectory"
+            "listDirectory", "deleteDirectory", "getTreeSummary"
     })
     void notDirectoryError(String methodName) throws IOException {
         //when
@@ -212,7 +398,7 @@ public class DirectoryOperationsApiIT extends BaseApiIT {
 
     @ParameterizedTest(name = "{0}")
     @ValueSource(strings = {
-            "listDirectory", "createDirectory", "deleteDirectory"
+            "listDirectory", "createDirectory", "deleteDirectory", "getTreeSummary"
     })
     void nullParam(String methodName) {
         //when
@@ -14,6 +14,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -200,6 +204,59 @@ public class FileOperationsApiIT extends BaseApiIT {
         assertThat(result).isEqualTo("ne1");
     }
 
+    @Test
+    void appendAndReadBytes() throws Throwable {
+        //given: bytes which are not valid UTF-8
+        Path file1 = rootPath.resolve("file1");
+        Files.createFile(file1);
+        byte[] data = {(byte) 0xff, 0x00, (byte) 0xc3, (byte) 0xa9, (byte) 0x80, 0x0a};
+
+        //when
+        getClient().invoke("appendBytesToFile", Map.of("path", "file1", "data", data), Void.class);
+
+        //then
+        assertThat(Files.readAllBytes(file1)).isEqualTo(data);
+
+        //when: range starts in the middle of a multibyte character
+        byte[] result = getClient().invoke(
+                "readBytesFromFile",
+                Map.of("path", "file1", "offset", 3, "length", 10),
+                byte[].class);
+
+        //then
+        assertThat(result).containsExactly((byte) 0xa9, (byte) 0x80, 0x0a);
+    }
+
+    @Test
+    void readFollow() throws Throwable {
+        //given
+        Files.writeString(rootPath.resolve("file1"), "abc");
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+
+        //when: follower waits at the end of the file while another client appends
+        Future<byte[]> followed = pool.submit(() -> {
+            try {
+                return getClient().invoke("readFollow",
+                        Map.of("path", "file1", "offset", 3, "maxBytes", 100, "timeoutMs", 30_000), byte[].class);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(200);
+        getClient().invoke("appendToFile", Map.of("path", "file1", "data", "de"), Void.class);
+
+        //then
+        assertThat(followed.get(10, TimeUnit.SECONDS)).isEqualTo("de".getBytes(StandardCharsets.UTF_8));
+        pool.shutdown();
+
+        //when: nothing is appended
+        byte[] timedOut = getClient().invoke("readFollow",
+                Map.of("path", "file1", "offset", 5, "maxBytes", 100, "timeoutMs", 10), byte[].class);
+
+        //then
+        assertThat(timedOut).isEmpty();
+    }
+
     @Test
     void readFromFileArgError() throws Throwable {
         //given
@@ -231,6 +288,19 @@ public class FileOperationsApiIT extends BaseApiIT {
         //then
         assertThat(thrown.getCode()).isEqualTo(-32098);
         assertThat(thrown).hasMessageContaining("Invalid length");
+
+        //when
+        thrown = assertThrows(
+                JsonRpcClientException.class,
+                () -> getClient().invoke(
+                        "readFromFile",
+                        Map.of("path", "file1", "offset", 0, "length", Integer.MAX_VALUE),
+                        String.class)
+        );
+
+        //then
+        assertThat(thrown.getCode()).isEqualTo(-32098);
+        assertThat(thrown).hasMessageContaining("Invalid length");
     }
 
     @Test
@@ -0,0 +1,251 @@
+package com.id.fileserver.api;
+
+import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.GrepMatch;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileStreamApiIT extends BaseApiIT {
+
+    private static final String FILES_URL = "/stream/v1/files?path={path}";
+    private static final String LIST_URL = "/stream/v1/files/list?path={path}";
+    private static final String FIND_URL = "/stream/v1/files/find?path={path}&glob={glob}";
+    private static final String GREP_URL = "/stream/v1/files/grep?path={path}&pattern={pattern}";
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void downloadFile() throws Throwable {
+        //given
+        Path file1 = rootPath.resolve("file1");
+        String data = "0123456789".repeat(1_000);
+        FileUtils.writeStringToFile(file1.toFile(), data, StandardCharsets.UTF_8);
+
+        //when
+        ResponseEntity<byte[]> result = restTemplate.getForEntity(FILES_URL, byte[].class, "file1");
+
+        //then
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getHeaders().getContentLength()).isEqualTo(data.length());
+        assertThat(new String(result.getBody(), StandardCharsets.UTF_8)).isEqualTo(data);
+    }
+
+    @Test
+    void downloadRange() throws Throwable {
+        //given
+        Path file1 = rootPath.resolve("file1");
+        FileUtils.writeStringToFile(file1.toFile(), "0123456789", StandardCharsets.UTF_8);
+
+        //when
+        ResponseEntity<byte[]> result = download("file1", "bytes=2-4");
+
+        //then
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(result.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 2-4/10");
+        assertThat(new String(result.getBody(), StandardCharsets.UTF_8)).isEqualTo("234");
+
+        //when: suffix range
+        result = download("file1", "bytes=-3");
+
+        //then
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.PARTIAL_CONTENT);
+        assertThat(result.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 7-9/10");
+        assertThat(new String(result.getBody(), StandardCharsets.UTF_8)).isEqualTo("789");
+    }
+
+    @Test
+    void downloadRangeNotSatisfiable() throws Throwable {
+        //given
+        Path file1 = rootPath.resolve("file1");
+        FileUtils.writeStringToFile(file1.toFile(), "0123456789", StandardCharsets.UTF_8);
+
+        //when
+        ResponseEntity<byte[]> result = download("file1", "bytes=10-20");
+
+        //then
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+        assertThat(result.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */10");
+    }
+
+    @Test
+    void downloadErrors() throws Throwable {
+        //given
+        Files.createDirectories(rootPath.resolve("dir"));
+
+        //then
+        assertThat(download("unknown", null).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(download("../..", null).getStatusCode()).isEqualTo(HttpStatus.FORBIDDEN);
+        assertThat(download("dir", null).getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void listDirectory() throws Throwable {
+        //given
+        Path dir1 = Files.createDirectories(rootPath.resolve("dir1"));
+        int fileNum = 1_000;
+        for (int i = 0; i < fileNum; i++) {
+            Files.createFile(dir1.resolve("file" + i));
+        }
+        Files.createDirectories(dir1.resolve("dir2"));
+
+        //when
+        ResponseEntity<FileInfo[]> result = restTemplate.getForEntity(LIST_URL, FileInfo[].class, "dir1");
+
+        //then
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getBody()).hasSize(fileNum + 1);
+        assertThat(result.getBody()).filteredOn(FileInfo::isDirectory).extracting(FileInfo::getName)
+                .containsExactly("dir2");
+    }
+
+    @Test
+    void findInTree() throws Throwable {
+        //given: more matches than the page size of the api
+        Path dir1 = Files.createDirectories(rootPath.resolve("dir1/dir2"));
+        int fileNum = 1_500;
+        for (int i = 0; i < fileNum; i++) {
+            Files.createFile(dir1.resolve("file" + i + ".log"));
+        }
+        Files.createFile(rootPath.resolve("dir1/other.txt"));
+
+        //when
+        ResponseEntity<FileInfo[]> result = restTemplate.getForEntity(FIND_URL, FileInfo[].class, "dir1", "*.log");
+
+        //then
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getBody()).hasSize(fileNum);
+        assertThat(result.getBody()).extracting(FileInfo::getPath).contains("dir1/dir2/file0.log");
+    }
+
+    @Test
+    void grepInTree() throws Throwable {
+        //given: more matches than the page size of the api
+        Path dir1 = Files.createDirectories(rootPath.resolve("dir1/dir2"));
+        int lineNum = 1_500;
+        Files.writeString(dir1.resolve("file1.log"), "match\n".repeat(lineNum));
+        Files.writeString(dir1.resolve("file2.log"), "other\n");
+
+        //when
+        ResponseEntity<GrepMatch[]> result = restTemplate.getForEntity(GREP_URL, GrepMatch[].class, "dir1", "match");
+
+        //then
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(result.getBody()).hasSize(lineNum);
+        assertThat(result.getBody()[lineNum - 1].getLineNumber()).isEqualTo(lineNum);
+        assertThat(result.getBody()[lineNum - 1].getOffset()).isEqualTo((lineNum - 1) * 6L);
+        assertThat(restTemplate.getForEntity(GREP_URL, String.class, "dir1", "(").getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void listDirectoryErrors() throws Throwable {
+        //given
+        Files.createFile(rootPath.resolve("file1"));
+
+        //then
+        assertThat(restTemplate.getForEntity(LIST_URL, String.class, "unknown").getStatusCode())
+                .isEqualTo(HttpStatus.NOT_FOUND);
+        assertThat(restTemplate.getForEntity(LIST_URL, String.class, "file1").getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(restTemplate.getForEntity(LIST_URL, String.class, "../..").getStatusCode())
+                .isEqualTo(HttpStatus.FORBIDDEN);
+    }
+
+    @Test
+    void uploadToFile() throws Throwable {
+        //given
+        Path file1 = rootPath.resolve("file1");
+        FileUtils.writeStringToFile(file1.toFile(), "head", StandardCharsets.UTF_8);
+
+        //when
+        String data = "0123456789".repeat(100_000);
+        FileInfo result = restTemplate.postForObject(FILES_URL, data.getBytes(StandardCharsets.UTF_8),
+                FileInfo.class, "file1");
+
+        //then
+        assertThat(result.getSize()).isEqualTo(4 + data.length());
+        assertThat(FileUtils.readFileToString(file1.toFile(), StandardCharsets.UTF_8)).isEqualTo("head" + data);
+    }
+
+    @Test
+    void followFile() throws Throwable {
+        //given
+        Path file1 = Files.writeString(rootPath.resolve("file1"), "head");
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create(restTemplate.getRootUri() + "/stream/v1/files/follow?path=file1&offset=2&timeoutMs=1000"))
+                .build();
+
+        //when
+        HttpResponse<InputStream> response = HttpClient.newHttpClient()
+                .send(request, HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            byte[] first = body.readNBytes(2);
+            Files.writeString(file1, "tail", StandardOpenOption.APPEND);
+            getClient().invoke("appendToFile", Map.of("path", "file1", "data", "end"), Void.class);
+            byte[] rest = body.readAllBytes();
+
+            //then: existing bytes come first, appended ones as they are written, until nothing is appended
+            assertThat(response.statusCode()).isEqualTo(HttpStatus.OK.value());
+            assertThat(new String(first, StandardCharsets.UTF_8)).isEqualTo("ad");
+            assertThat(new String(rest, StandardCharsets.UTF_8)).isEqualTo("tailend");
+        }
+    }
+
+    @Test
+    void uploadChunked() throws Throwable {
+        //given
+        Path file1 = rootPath.resolve("file1");
+        Files.createFile(file1);
+
+        //when: body of unknown length is sent with chunked transfer encoding
+        byte[] data = "line".repeat(50_000).getBytes(StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(restTemplate.getRootUri() + "/stream/v1/files?path=file1"))
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(data)))
+                .build();
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+        //then
+        assertThat(response.statusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(Files.readAllBytes(file1)).isEqualTo(data);
+    }
+
+    @Test
+    void uploadToNotExistingFile() {
+        //when
+        ResponseEntity<String> result = restTemplate.postForEntity(FILES_URL, new byte[]{1, 2, 3},
+                String.class, "unknown");
+
+        //then
+        assertThat(result.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    private ResponseEntity<byte[]> download(String path, String range) {
+        HttpHeaders headers = new HttpHeaders();
+        if (range != null) {
+            headers.set(HttpHeaders.RANGE, range);
+        }
+        return restTemplate.exchange(FILES_URL, HttpMethod.GET, new HttpEntity<>(headers), byte[].class, path);
+    }
+}
@@ -0,0 +1,147 @@
+package com.id.fileserver.api;
+
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.model.JobInfo;
+import com.id.fileserver.model.JobInfo.State;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JobsApiIT extends BaseApiIT {
+
+    @Test
+    void copyDirectoryAsync() throws Throwable {
+        //given
+        Path sourceDir = rootPath.resolve("dir11/dir12/dir13");
+        Files.createDirectories(sourceDir);
+        Files.writeString(sourceDir.resolve("file1"), "12345");
+        Files.writeString(sourceDir.resolve("file2"), "123");
+
+        //when
+        String jobId = getClient().invoke(
+                "copyDirectoryAsync", Map.of("sourcePath", "dir11/dir12", "targetPath", "dir21"), String.class);
+        JobInfo job = awaitJob(jobId);
+
+        //then
+        assertThat(job.getState()).isEqualTo(State.SUCCEEDED);
+        assertThat(job.getOperation()).isEqualTo("copyDirectory");
+        assertThat(job.getFiles()).isEqualTo(2);
+        assertThat(job.getDirectories()).isEqualTo(2);
+        assertThat(job.getBytes()).isEqualTo(8);
+        assertThat(job.getResult()).isEqualTo(FileInfo.builder()
+                .path("dir21")
+                .name("dir21")
+                .size(0)
+                .isDirectory(true)
+                .build());
+        assertThat(rootPath.resolve("dir21/dir12/dir13/file1")).hasContent("12345");
+    }
+
+    @Test
+    void moveDirectoryAsync() throws Throwable {
+        //given
+        Path sourceDir = rootPath.resolve("dir11/sourceDir");
+        Files.createDirectories(sourceDir);
+        Files.createFile(sourceDir.resolve("sourceFile"));
+
+        //when
+        String jobId = getClient().invoke(
+                "moveDirectoryAsync", Map.of("sourcePath", "dir11/sourceDir", "targetPath", "dir21"), String.class);
+        JobInfo job = awaitJob(jobId);
+
+        //then
+        assertThat(job.getState()).isEqualTo(State.SUCCEEDED);
+        assertThat(job.getResult().getPath()).isEqualTo("dir21");
+        assertThat(rootPath.resolve("dir21/sourceDir/sourceFile")).exists();
+        assertThat(sourceDir).doesNotExist();
+    }
+
+    @Test
+    void deleteDirectoryAsync() throws Throwable {
+        //given
+        Path dir = rootPath.resolve("dir1/dir2");
+        Files.createDirectories(dir);
+        Files.writeString(dir.resolve("file1"), "1234");
+
+        //when
+        String jobId = getClient().invoke("deleteDirectoryAsync", Map.of("path", "dir1"), String.class);
+        JobInfo job = awaitJob(jobId);
+
+        //then
+        assertThat(job.getState()).isEqualTo(State.SUCCEEDED);
+        assertThat(job.getFiles()).isEqualTo(1);
+        assertThat(job.getBytes()).isEqualTo(4);
+        assertThat(job.getResult()).isNull();
+        assertThat(rootPath.resolve("dir1")).doesNotExist();
+    }
+
+    @Test
+    void failedJob() throws Throwable {
+        //when
+        String jobId = getClient().invoke("deleteDirectoryAsync", Map.of("path", "unknown"), String.class);
+        JobInfo job = awaitJob(jobId);
+
+        //then
+        assertThat(job.getState()).isEqualTo(State.FAILED);
+        assertThat(job.getErrorType()).isEqualTo("NoSuchFileException");
+        assertThat(job.getError()).isEqualTo("unknown");
+    }
+
+    @Test
+    void pathOutsideRootIsRejectedBeforeJobStarts() {
+        //when
+        JsonRpcClientException thrown = assertThrows(
+                JsonRpcClientException.class,
+                () -> getClient().invoke("copyDirectoryAsync",
+                        Map.of("sourcePath", "dir1", "targetPath", "../dir2"), String.class));
+
+        //then
+        assertThat(thrown.getCode()).isEqualTo(-32099);
+        assertThat(thrown).hasMessageContaining("Access forbidden");
+    }
+
+    @Test
+    void cancelFinishedJob() throws Throwable {
+        //given
+        Files.createDirectories(rootPath.resolve("dir1"));
+        String jobId = getClient().invoke("deleteDirectoryAsync", Map.of("path", "dir1"), String.class);
+        awaitJob(jobId);
+
+        //when
+        JobInfo job = getClient().invoke("cancelJob", Map.of("jobId", jobId), JobInfo.class);
+
+        //then: nothing to cancel
+        assertThat(job.getState()).isEqualTo(State.SUCCEEDED);
+    }
+
+    @Test
+    void unknownJob() {
+        //when
+        JsonRpcClientException thrown = assertThrows(
+                JsonRpcClientException.class,
+                () -> getClient().invoke("getJob", Map.of("jobId", "unknown"), JobInfo.class));
+
+        //then
+        assertThat(thrown.getCode()).isEqualTo(-32098);
+        assertThat(thrown).hasMessageContaining("Unknown job");
+    }
+
+    private JobInfo awaitJob(String jobId) throws Throwable {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            JobInfo job = getClient().invoke("getJob", Map.of("jobId", jobId), JobInfo.class);
+            if (job.getState() != State.QUEUED && job.getState() != State.RUNNING) {
+                return job;
+            }
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.id.fileserver.api;
+
+import com.id.fileserver.model.FileInfo;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestPropertySource(properties = "app.watch.enabled=true")
+public class MetadataCacheIT extends BaseApiIT {
+
+    @Test
+    void outsideChangesAreVisible() throws Throwable {
+        //given
+        Path dir = Files.createDirectories(rootPath.resolve("dir1"));
+        Path file1 = dir.resolve("file1");
+        FileUtils.writeStringToFile(file1.toFile(), "123", StandardCharsets.UTF_8);
+        assertThat(getSize("dir1/file1")).isEqualTo(3);
+
+        //when: file is appended outside the service
+        FileUtils.writeStringToFile(file1.toFile(), "456", StandardCharsets.UTF_8, true);
+
+        //then
+        awaitSize("dir1/file1", 6);
+
+        //when: directory is replaced outside the service
+        FileUtils.deleteDirectory(dir.toFile());
+        Files.createDirectories(dir);
+        FileUtils.writeStringToFile(file1.toFile(), "1", StandardCharsets.UTF_8);
+
+        //then
+        awaitSize("dir1/file1", 1);
+    }
+
+    @Test
+    void serviceChangesAreVisible() throws Throwable {
+        //given
+        getClient().invoke("createFile", Map.of("path", "file1"), FileInfo.class);
+        assertThat(getSize("file1")).isZero();
+
+        //when
+        getClient().invoke("appendToFile", Map.of("path", "file1", "data", "123"), Void.class);
+
+        //then: visible immediately
+        assertThat(getSize("file1")).isEqualTo(3);
+        FileInfo[] list = getClient().invoke("listDirectory", Map.of("path", "."), FileInfo[].class);
+        assertThat(List.of(list)).extracting(FileInfo::getSize).containsExactly(3L);
+    }
+
+    private long getSize(String path) throws Throwable {
+        return getClient().invoke("getFileInfo", Map.of("path", path), FileInfo.class).getSize();
+    }
+
+    private void awaitSize(String path, long size) throws Throwable {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (getSize(path) != size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(getSize(path)).isEqualTo(size);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.id.fileserver.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@TestPropertySource(properties = "app.block-cache.max-bytes=16777216")
+public class MetricsIT extends BaseApiIT {
+
+    private static final String CACHE_GETS_URL = "/actuator/metrics/cache.gets?tag=cache:blocks&tag=result:{result}";
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void blockCacheMetrics() throws Throwable {
+        //given
+        Path file1 = rootPath.resolve("file1");
+        FileUtils.writeStringToFile(file1.toFile(), "0123456789", StandardCharsets.UTF_8);
+        double hits = cacheGets("hit");
+        double misses = cacheGets("miss");
+
+        //when: same range is read twice
+        for (int i = 0; i < 2; i++) {
+            getClient().invoke("readFromFile", Map.of("path", "file1", "offset", 0, "length", 5), String.class);
+        }
+
+        //then
+        assertThat(cacheGets("miss")).isEqualTo(misses + 1);
+        assertThat(cacheGets("hit")).isEqualTo(hits + 1);
+    }
+
+    private double cacheGets(String result) {
+        ResponseEntity<JsonNode> response = restTemplate.getForEntity(CACHE_GETS_URL, JsonNode.class, result);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return response.getBody().get("measurements").get(0).get("value").asDouble();
+    }
+
+}
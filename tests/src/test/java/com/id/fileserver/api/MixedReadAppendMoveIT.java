@@ -0,0 +1,172 @@
+package com.id.fileserver.api;
+
+import com.googlecode.jsonrpc4j.JsonRpcClientException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * This test verifies reads, appends and moves of the same file (or of its directory) running concurrently.
+ * Reads must never return a partially appended record, moves must never lose an appended one.
+ */
+public class MixedReadAppendMoveIT extends BaseApiIT {
+
+    private static final int RECORD_LENGTH = 32;
+    private static final String RECORD_PATTERN = "record\\d{6}x*";
+
+    @Test
+    void readAppendAndMoveConcurrently() throws Throwable {
+        //given
+        Files.createFile(rootPath.resolve("log"));
+
+        //when: appenders, readers and a mover work on the same file
+        int appendNum = 2_000;
+        AtomicInteger appended = new AtomicInteger();
+        AtomicInteger reads = new AtomicInteger();
+        AtomicBoolean appending = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<String> torn = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+
+        ExecutorService appenders = Executors.newFixedThreadPool(20);
+        for (int i = 0; i < appendNum; i++) {
+            String record = record(i);
+            appenders.execute(() -> {
+                try {
+                    getClient().invoke("appendToFile", Map.of("path", "log", "data", record), Void.class);
+                    appended.incrementAndGet();
+                } catch (JsonRpcClientException e) {
+                    //file is moved away at the moment
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            });
+        }
+
+        ExecutorService others = Executors.newFixedThreadPool(5);
+        for (int i = 0; i < 4; i++) {
+            others.execute(() -> {
+                while (appending.get()) {
+                    try {
+                        String data = getClient().invoke(
+                                "readFromFile", Map.of("path", "log", "offset", 0, "length", 1_000_000),
+                                String.class);
+                        reads.incrementAndGet();
+                        if (!isWholeRecords(data)) {
+                            torn.add(data);
+                        }
+                    } catch (JsonRpcClientException e) {
+                        //file is moved away at the moment
+                    } catch (Throwable e) {
+                        unexpected.add(e);
+                    }
+                }
+            });
+        }
+        others.execute(() -> {
+            while (appending.get()) {
+                try {
+                    getClient().invoke("moveFile", Map.of("sourcePath", "log", "targetPath", "log-moved"),
+                            Object.class);
+                    getClient().invoke("moveFile", Map.of("sourcePath", "log-moved", "targetPath", "log"),
+                            Object.class);
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            }
+        });
+
+        appenders.shutdown();
+        assertThat(appenders.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        appending.set(false);
+        others.shutdown();
+        assertThat(others.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+
+        //then: every successful append is in the file exactly once, no record is torn
+        assertThat(unexpected).isEmpty();
+        String content = Files.readString(rootPath.resolve("log"), StandardCharsets.UTF_8);
+        assertThat(isWholeRecords(content)).isTrue();
+        assertThat(content.length()).isEqualTo(appended.get() * RECORD_LENGTH);
+        assertThat(content.lines().distinct().count()).isEqualTo(appended.get());
+
+        //and: readers never saw a partial record
+        assertThat(reads.get()).isPositive();
+        assertThat(torn).isEmpty();
+    }
+
+    @Test
+    void appendWhileDirectoryIsMoved() throws Throwable {
+        //given
+        Files.createDirectories(rootPath.resolve("dir"));
+        Files.createFile(rootPath.resolve("dir/log"));
+        Files.createDirectories(rootPath.resolve("other"));
+
+        //when: files inside the directory are appended while the directory is moved back and forth
+        int appendNum = 1_000;
+        AtomicInteger appended = new AtomicInteger();
+        AtomicBoolean appending = new AtomicBoolean(true);
+        ConcurrentLinkedQueue<Throwable> unexpected = new ConcurrentLinkedQueue<>();
+
+        ExecutorService appenders = Executors.newFixedThreadPool(20);
+        for (int i = 0; i < appendNum; i++) {
+            String record = record(i);
+            appenders.execute(() -> {
+                try {
+                    getClient().invoke("appendToFile", Map.of("path", "dir/log", "data", record), Void.class);
+                    appended.incrementAndGet();
+                } catch (JsonRpcClientException e) {
+                    //directory is moved away at the moment
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            });
+        }
+        ExecutorService mover = Executors.newSingleThreadExecutor();
+        mover.execute(() -> {
+            while (appending.get()) {
+                try {
+                    getClient().invoke("moveDirectory", Map.of("sourcePath", "dir", "targetPath", "other"),
+                            Object.class);
+                    getClient().invoke("moveDirectory", Map.of("sourcePath", "other/dir", "targetPath", ""),
+                            Object.class);
+                } catch (Throwable e) {
+                    unexpected.add(e);
+                }
+            }
+        });
+
+        appenders.shutdown();
+        assertThat(appenders.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        appending.set(false);
+        mover.shutdown();
+        assertThat(mover.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+
+        //then: every successful append is in the moved file, nothing was written into a half-moved tree
+        assertThat(unexpected).isEmpty();
+        String content = Files.readString(rootPath.resolve("dir/log"), StandardCharsets.UTF_8);
+        assertThat(isWholeRecords(content)).isTrue();
+        assertThat(content.lines().distinct().count()).isEqualTo(appended.get());
+        assertThat(rootPath.resolve("other")).isEmptyDirectory();
+    }
+
+    private static boolean isWholeRecords(String data) {
+        return data.length() % RECORD_LENGTH == 0
+                && data.lines().allMatch(line -> line.length() == RECORD_LENGTH - 1 && line.matches(RECORD_PATTERN));
+    }
+
+    private static String record(int i) {
+        String record = String.format("record%06d", i);
+        return record + "x".repeat(RECORD_LENGTH - record.length() - 1) + "\n";
+    }
+
+}
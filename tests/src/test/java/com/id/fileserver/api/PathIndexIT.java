@@ -0,0 +1,93 @@
+package com.id.fileserver.api;
+
+import com.id.fileserver.model.FileInfo;
+import com.id.fileserver.service.PathIndex;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@TestPropertySource(properties = {
+        "app.watch.enabled=true",
+        "app.path-index.enabled=true"
+})
+public class PathIndexIT extends BaseApiIT {
+
+    //new index of every run, nothing is loaded from a previous one
+    private static final Path INDEX_DIR = createIndexDir();
+
+    @DynamicPropertySource
+    static void indexDirectory(DynamicPropertyRegistry registry) {
+        registry.add("app.path-index.directory", INDEX_DIR::toString);
+    }
+
+    @AfterAll
+    static void afterAll() throws IOException {
+        FileUtils.deleteDirectory(INDEX_DIR.toFile());
+    }
+
+    @Autowired
+    private PathIndex pathIndex;
+
+    @Test
+    void findFromIndex() throws Throwable {
+        //given
+        await(pathIndex::isReady);
+        getClient().invoke("createDirectory", Map.of("path", "dir1/dir2"), FileInfo.class);
+        getClient().invoke("createFile", Map.of("path", "dir1/dir2/file1.log"), FileInfo.class);
+        getClient().invoke("appendToFile", Map.of("path", "dir1/dir2/file1.log", "data", "123"), Void.class);
+
+        //when: file is created outside the service
+        Path file2 = rootPath.resolve("dir1/file2.log");
+        Files.writeString(file2, "45");
+        await(() -> pathIndex.get(file2) != null);
+        FileInfo[] found = getClient().invoke(
+                "find", Map.of("path", "dir1", "glob", "*.log", "maxDepth", 0, "limit", 100), FileInfo[].class);
+
+        //then
+        assertThat(List.of(found)).extracting(FileInfo::getPath, FileInfo::getSize)
+                .containsExactly(tuple("dir1/dir2/file1.log", 3L), tuple("dir1/file2.log", 2L));
+
+        //when: directory is moved by the service and deleted outside
+        getClient().invoke("moveDirectory", Map.of("sourcePath", "dir1/dir2", "targetPath", "."), FileInfo.class);
+        FileUtils.deleteDirectory(rootPath.resolve("dir1").toFile());
+        await(() -> pathIndex.get(file2) == null);
+        found = getClient().invoke(
+                "find", Map.of("path", ".", "glob", "*.log", "maxDepth", 0, "limit", 100), FileInfo[].class);
+
+        //then
+        assertThat(List.of(found)).extracting(FileInfo::getPath).contains("dir2/file1.log")
+                .doesNotContain("dir1/file2.log", "dir1/dir2/file1.log");
+    }
+
+    private static Path createIndexDir() {
+        try {
+            return Files.createTempDirectory("path-index-it");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+
+}
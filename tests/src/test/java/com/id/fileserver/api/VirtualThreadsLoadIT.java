@@ -0,0 +1,98 @@
+package com.id.fileserver.api;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.test.context.TestPropertySource;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Many concurrent clients served on virtual threads.
+ * The full load test is run only on demand: {@code -Dload-tests=true}
+ */
+@Slf4j
+@TestPropertySource(properties = "app.virtual-threads.enabled=true")
+public class VirtualThreadsLoadIT extends BaseApiIT {
+
+    @Test
+    void concurrentClients() throws Exception {
+        load(200, 5);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "load-tests", matches = "true")
+    void tenThousandConcurrentClients() throws Exception {
+        load(10_000, 5);
+    }
+
+    private void load(int clients, int requestsPerClient) throws Exception {
+        //given
+        Files.writeString(rootPath.resolve("file1"), "0123456789".repeat(100));
+        String body = """
+                {"jsonrpc": "2.0", "id": 1, "method": "readFromFile",
+                 "params": {"path": "file1", "offset": 0, "length": 100}}""";
+        HttpRequest request = HttpRequest.newBuilder(URI.create(getUrl()))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofMinutes(5))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+
+        //when: every client sends its requests one by one, all clients at once
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long startNanos;
+        try (ExecutorService clientThreads = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            for (int i = 0; i < clients; i++) {
+                clientThreads.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < requestsPerClient; j++) {
+                        try {
+                            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (response.statusCode() == 200 && response.body().contains("0123456789")) {
+                                succeeded.incrementAndGet();
+                            } else {
+                                failed.incrementAndGet();
+                            }
+                        } catch (Exception e) {
+                            if (failed.getAndIncrement() == 0) {
+                                log.warn("First failure", e);
+                            }
+                        }
+                    }
+                });
+            }
+            startNanos = System.nanoTime();
+            start.countDown();
+            clientThreads.shutdown();
+            assertThat(clientThreads.awaitTermination(10, TimeUnit.MINUTES)).isTrue();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        //then
+        log.info("{} clients: {} requests in {} ms, {} requests/s, {} failed",
+                clients, succeeded.get(), elapsedMillis, succeeded.get() * 1000 / Math.max(elapsedMillis, 1),
+                failed.get());
+        assertThat(failed.get()).isZero();
+        assertThat(succeeded.get()).isEqualTo((long) clients * requestsPerClient);
+    }
+
+}